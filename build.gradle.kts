@@ -23,6 +23,10 @@ repositories {
     mavenCentral()
 }
 
+dependencies {
+    implementation(project(":core"))
+}
+
 tasks {
     // Set the JVM compatibility versions
     withType<JavaCompile> {
@@ -0,0 +1,29 @@
+plugins {
+    id("java-library")
+}
+
+group = "escaper2.testTask"
+version = "1.0-SNAPSHOT"
+
+repositories {
+    mavenCentral()
+}
+
+// The core engine doesn't depend on the IntelliJ Platform, only on the nullability annotations
+dependencies {
+    compileOnly("org.jetbrains:annotations:23.0.0")
+
+    testCompileOnly("org.jetbrains:annotations:23.0.0")
+    testImplementation("org.junit.jupiter:junit-jupiter:5.9.1")
+}
+
+tasks {
+    withType<JavaCompile> {
+        sourceCompatibility = "11"
+        targetCompatibility = "11"
+    }
+
+    test {
+        useJUnitPlatform()
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Represents an immutable set of sides on which a code element is available.
+ * The sides are configured with {@link #setNames}, up to {@link #MAX_SIDES} of them, and a set of sides is
+ * stored as a bitmask in a {@code long}, so intersecting two sides is a single AND no matter how many sides are
+ * defined. Every combination is interned when it is first used, so sides can be compared by identity and
+ * intersecting sides that were seen before never allocates a new object. The names, the bitmask of all configured
+ * sides and the interned sides are published together as one immutable configuration, so a thread reading sides
+ * while they are reconfigured sees either the old or the new configuration, never a mix of both.
+ */
+
+package escaper2.testtask.sideonlycore;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+public final class Side {
+
+    public static final int MAX_SIDES = Long.SIZE;
+
+    private static volatile Configuration configuration = new Configuration(List.of("CLIENT", "SERVER"));
+
+    /**
+     * The element is not available on any side.
+     */
+
+    public static final Side NONE = new Side(0);
+
+    /**
+     * The element is available on all configured sides. Its bitmask has all bits set, so intersecting it with
+     * any other side gives that side.
+     */
+
+    public static final Side ALL = new Side(-1L);
+
+    private final long mask;
+
+    private Side(long mask) {
+        this.mask = mask;
+    }
+
+    /**
+     * Replaces the configured sides. Bit {@code i} of a bitmask stands for the side with index {@code i}.
+     * Duplicate names are ignored, as are all names after the first {@link #MAX_SIDES}.
+     *
+     * @param sideNames the names of the sides, such as "CLIENT" or "SERVER"
+     */
+
+    public static void setNames(@NotNull List<String> sideNames) {
+        List<String> unique = new ArrayList<>(new LinkedHashSet<>(sideNames));
+        List<String> newNames = List.copyOf(unique.subList(0, Math.min(unique.size(), MAX_SIDES)));
+        if (newNames.equals(configuration.names)) return;
+
+        configuration = new Configuration(newNames);
+    }
+
+    /**
+     * Returns the interned side for the given bitmask. Bits that do not correspond to a configured side are ignored,
+     * and a bitmask that contains all configured sides gives {@link #ALL}.
+     *
+     * @param mask the bitmask of sides
+     * @return the shared Side instance for the mask
+     */
+
+    @NotNull
+    public static Side of(long mask) {
+        return configuration.of(mask);
+    }
+
+    /**
+     * Returns the side with the given name, such as "CLIENT" or "SERVER".
+     *
+     * @param name the name of the side
+     * @return the Side with the given name, or null if there is no side with this name
+     */
+
+    @Nullable
+    public static Side byName(@NotNull String name) {
+        Configuration current = configuration;
+        int index = current.names.indexOf(name);
+        return index < 0 ? null : current.of(1L << index);
+    }
+
+    /**
+     * Returns the bitmask of this side.
+     *
+     * @return the bitmask of this side
+     */
+
+    public long getMask() {
+        return mask;
+    }
+
+    /**
+     * Returns the sides that are present both in this side and in the given one.
+     *
+     * @param other the side to intersect with
+     * @return the intersection of both sides
+     */
+
+    @NotNull
+    public Side intersect(@NotNull Side other) {
+        if (this == ALL) return other;
+        if (other == ALL) return this;
+        return of(mask & other.mask);
+    }
+
+    /**
+     * Returns true if every side present in this side is also present in the given one.
+     *
+     * @param other the side to compare with
+     * @return true if this side is a subset of the given side
+     */
+
+    public boolean isSubsetOf(@NotNull Side other) {
+        return (mask & ~other.mask) == 0;
+    }
+
+    /**
+     * Returns true if the element is not available on any side.
+     *
+     * @return true if no side is present
+     */
+
+    public boolean isEmpty() {
+        return mask == 0;
+    }
+
+    /**
+     * Returns the number of sides that are present.
+     *
+     * @return the number of sides
+     */
+
+    public int size() {
+        return Long.bitCount(mask & configuration.universe);
+    }
+
+    @Override
+    public String toString() {
+        List<String> sideNames = configuration.names;
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < sideNames.size(); i++) {
+            if ((mask & (1L << i)) == 0) continue;
+            if (builder.length() > 1) builder.append(", ");
+            builder.append(sideNames.get(i));
+        }
+        return builder.append(']').toString();
+    }
+
+    /**
+     * The configured sides: their names, the bitmask of all of them and the sides interned for them.
+     */
+
+    private static final class Configuration {
+        private final List<String> names;
+        private final long universe;
+        private final Map<Long, Side> interned = new ConcurrentHashMap<>();
+
+        private Configuration(List<String> names) {
+            this.names = names;
+            this.universe = names.size() == MAX_SIDES ? -1L : (1L << names.size()) - 1;
+        }
+
+        private Side of(long mask) {
+            long known = mask & universe;
+            if (known == universe) return ALL;
+            if (known == 0) return NONE;
+            return interned.computeIfAbsent(known, Side::new);
+        }
+    }
+}
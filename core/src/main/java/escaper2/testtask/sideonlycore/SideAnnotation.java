@@ -0,0 +1,58 @@
+/**
+ * An annotation of a declaration as seen by the side engine: the qualified name of the annotation and the names
+ * of the enum constants its value refers to. Front ends only create it for annotations with an explicit value,
+ * since an annotation without one doesn't restrict the sides of its declaration.
+ */
+
+package escaper2.testtask.sideonlycore;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.Objects;
+
+
+public final class SideAnnotation {
+
+    private final String qualifiedName;
+    private final List<String> constants;
+
+    /**
+     * Creates an annotation.
+     *
+     * @param qualifiedName the qualified name of the annotation, with nested classes separated by dots
+     * @param constants     the names of the enum constants referenced by the value of the annotation
+     */
+
+    public SideAnnotation(@NotNull String qualifiedName, @NotNull List<String> constants) {
+        this.qualifiedName = qualifiedName;
+        this.constants = List.copyOf(constants);
+    }
+
+    @NotNull
+    public String getQualifiedName() {
+        return qualifiedName;
+    }
+
+    @NotNull
+    public List<String> getConstants() {
+        return constants;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof SideAnnotation)) return false;
+        SideAnnotation other = (SideAnnotation) o;
+        return qualifiedName.equals(other.qualifiedName) && constants.equals(other.constants);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(qualifiedName, constants);
+    }
+
+    @Override
+    public String toString() {
+        return "@" + qualifiedName + constants;
+    }
+}
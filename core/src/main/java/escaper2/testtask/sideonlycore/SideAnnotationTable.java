@@ -0,0 +1,145 @@
+/**
+ * Maps side annotations and their enum constants to sides. Each annotation is named by its qualified name and lists
+ * which of its enum constants stand for which side. The table is keyed by the short name of the annotation, so a
+ * front end can tell that an annotation can't declare sides from the name it is referenced by alone, without
+ * resolving it.
+ */
+
+package escaper2.testtask.sideonlycore;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+
+public final class SideAnnotationTable {
+
+    private final Map<String, List<Mapping>> table = new HashMap<>();
+
+    /**
+     * Builds the table from the given annotations. The constants are mapped to the sides currently configured
+     * in {@link Side}, so the table has to be rebuilt whenever the names of the sides change.
+     *
+     * @param annotations the side each enum constant stands for, by the qualified names of the annotations
+     */
+
+    public SideAnnotationTable(@NotNull Map<String, ? extends Map<String, String>> annotations) {
+        for (Map.Entry<String, ? extends Map<String, String>> annotation : annotations.entrySet()) {
+            String qualifiedName = annotation.getKey();
+            if (qualifiedName == null || qualifiedName.isEmpty()) continue;
+
+            Map<String, Long> masks = new HashMap<>();
+            for (Map.Entry<String, String> constant : annotation.getValue().entrySet()) {
+                Side side = Side.byName(constant.getValue());
+                masks.merge(constant.getKey(), side == null ? 0 : side.getMask(), (a, b) -> a | b);
+            }
+
+            table.computeIfAbsent(getShortName(qualifiedName), key -> new ArrayList<>()).add(new Mapping(qualifiedName, masks));
+        }
+    }
+
+    /**
+     * Returns the mappings of the annotations with the given short name, usually a single one.
+     *
+     * @param shortName the short name of an annotation
+     * @return the mappings of the annotations with this short name, or an empty list if there are none
+     */
+
+    @NotNull
+    public List<Mapping> getMappings(@NotNull String shortName) {
+        return table.getOrDefault(shortName, Collections.emptyList());
+    }
+
+    /**
+     * Returns the mapping of the annotation with the given qualified name.
+     *
+     * @param qualifiedName the qualified name of an annotation, with nested classes separated by dots
+     * @return the mapping of the annotation, or null if it doesn't declare sides
+     */
+
+    @Nullable
+    public Mapping getMapping(@NotNull String qualifiedName) {
+        for (Mapping mapping : getMappings(getShortName(qualifiedName))) {
+            if (mapping.qualifiedName.equals(qualifiedName)) return mapping;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the side declared by the given annotations, the intersection of the sides of all side annotations
+     * among them.
+     *
+     * @param annotations the annotations of a declaration
+     * @return the declared side, or {@link Side#ALL} if none of the annotations declares sides
+     */
+
+    @NotNull
+    public Side getSide(@NotNull Collection<SideAnnotation> annotations) {
+        Side side = Side.ALL;
+        for (SideAnnotation annotation : annotations) {
+            Mapping mapping = getMapping(annotation.getQualifiedName());
+            if (mapping != null) side = side.intersect(Side.of(mapping.getMask(annotation.getConstants())));
+        }
+        return side;
+    }
+
+    private static String getShortName(String qualifiedName) {
+        return qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * A side annotation from the table together with the side bits of its enum constants.
+     */
+
+    public static final class Mapping {
+        private final String qualifiedName;
+        private final Map<String, Long> masks;
+
+        private Mapping(String qualifiedName, Map<String, Long> masks) {
+            this.qualifiedName = qualifiedName;
+            this.masks = masks;
+        }
+
+        @NotNull
+        public String getQualifiedName() {
+            return qualifiedName;
+        }
+
+        /**
+         * Returns the side bits of the enum constant with the given name.
+         *
+         * @param constant the name of an enum constant used in the annotation value
+         * @return the side bits of the constant, or 0 if it stands for no side
+         */
+
+        public long getMask(@NotNull String constant) {
+            return masks.getOrDefault(constant, 0L);
+        }
+
+        /**
+         * Returns true if all the given names are enum constants listed for this annotation, even if they stand
+         * for no configured side.
+         *
+         * @param constants the names used in the annotation value
+         * @return false if any of the names is not a listed constant
+         */
+
+        public boolean hasConstants(@NotNull Collection<String> constants) {
+            return masks.keySet().containsAll(constants);
+        }
+
+        /**
+         * Returns the side bits of all the given enum constants.
+         *
+         * @param constants the names of the enum constants used in the annotation value
+         * @return the union of the side bits of the constants
+         */
+
+        public long getMask(@NotNull Collection<String> constants) {
+            long mask = 0;
+            for (String constant : constants) mask |= getMask(constant);
+            return mask;
+        }
+    }
+}
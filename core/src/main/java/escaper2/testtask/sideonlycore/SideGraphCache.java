@@ -0,0 +1,121 @@
+/**
+ * Remembers the computed sides of elements together with which elements were computed from which parents.
+ * A change of a single declaration only drops the side of that element and of the elements computed from it,
+ * directly or through other elements. Sides restored from elsewhere, such as a persistent cache, are not linked
+ * to their parents, so they are dropped on every invalidation.
+ * The cache is thread-safe. Front ends that need other maps, for example with weak keys, pass a {@link MapFactory}
+ * creating them.
+ *
+ * @param <E> the type of the elements of the model
+ */
+
+package escaper2.testtask.sideonlycore;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+public class SideGraphCache<E> {
+
+    private final MapFactory mapFactory;
+    private final Map<E, Side> sides;
+    private final Map<E, Set<E>> dependents;
+    private final Set<E> restored;
+
+    public SideGraphCache() {
+        this(ConcurrentHashMap::new);
+    }
+
+    /**
+     * Creates a cache whose entries are held in maps created by the given factory.
+     *
+     * @param mapFactory the factory creating the maps of the cache
+     */
+
+    public SideGraphCache(@NotNull MapFactory mapFactory) {
+        this.mapFactory = mapFactory;
+        this.sides = mapFactory.create();
+        this.dependents = mapFactory.create();
+        this.restored = Collections.newSetFromMap(mapFactory.create());
+    }
+
+    /**
+     * Returns the cached side of the given element.
+     *
+     * @param element the element to get the side of
+     * @return the side of the element, or null if it is not cached
+     */
+
+    @Nullable
+    public Side get(@NotNull E element) {
+        return sides.get(element);
+    }
+
+    /**
+     * Stores the computed side of the given element together with the parents it was computed from.
+     *
+     * @param element the element whose side was computed
+     * @param side    the side of the element
+     * @param parents the parents whose sides were intersected into the side of the element
+     */
+
+    public void put(@NotNull E element, @NotNull Side side, @NotNull Collection<E> parents) {
+        for (E parent : parents) {
+            dependents.computeIfAbsent(parent, key -> Collections.newSetFromMap(mapFactory.create())).add(element);
+        }
+        sides.put(element, side);
+    }
+
+    /**
+     * Stores a restored side, whose parents are not known.
+     *
+     * @param element the element whose side was restored
+     * @param side    the side of the element
+     */
+
+    public void putRestored(@NotNull E element, @NotNull Side side) {
+        restored.add(element);
+        sides.put(element, side);
+    }
+
+    /**
+     * Drops the cached side of the given element and of all elements whose sides were computed from it,
+     * directly or through other elements, as well as all restored sides.
+     *
+     * @param element the element whose declaration was changed
+     */
+
+    public void invalidate(@NotNull E element) {
+        Deque<E> queue = new ArrayDeque<>(restored);
+        restored.clear();
+        queue.add(element);
+
+        while (!queue.isEmpty()) {
+            E current = queue.poll();
+            sides.remove(current);
+
+            Set<E> currentDependents = dependents.remove(current);
+            if (currentDependents != null) queue.addAll(currentDependents);
+        }
+    }
+
+    /**
+     * Creates the maps holding the entries of a cache, for example {@code ConcurrentHashMap::new}.
+     */
+
+    @FunctionalInterface
+    public interface MapFactory {
+
+        /**
+         * Creates a map for the entries of the cache. The maps have to be safe for concurrent use.
+         *
+         * @return a new empty map
+         */
+
+        @NotNull
+        <K, V> Map<K, V> create();
+    }
+}
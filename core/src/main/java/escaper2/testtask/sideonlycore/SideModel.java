@@ -0,0 +1,93 @@
+/**
+ * The code model the side engine works on, adapted by each front end from its own representation of code, such as
+ * PSI in the IDE or class files in a compiler plugin. The elements are types and their members. The side of an
+ * element is the side declared by its own annotations intersected with the sides of its parents: the type or member
+ * containing it and, for types, their supertypes.
+ *
+ * @param <E> the type of the elements of the model
+ */
+
+package escaper2.testtask.sideonlycore;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+public interface SideModel<E> {
+
+    /**
+     * Returns the supertypes of a type whose sides it inherits, usually its superclass and interfaces.
+     *
+     * @param element the element to get the supertypes of
+     * @return the supertypes of the element, or an empty list for members
+     */
+
+    @NotNull
+    List<E> getSupertypes(@NotNull E element);
+
+    /**
+     * Returns the element containing the given one whose sides it inherits, such as the type declaring a member
+     * or a nested type.
+     *
+     * @param element the element to get the container of
+     * @return the containing element, or null for top level types
+     */
+
+    @Nullable
+    E getContainer(@NotNull E element);
+
+    /**
+     * Returns the side annotations declared on the element itself.
+     *
+     * @param element the element to get the annotations of
+     * @return the annotations of the element
+     */
+
+    @NotNull
+    List<SideAnnotation> getAnnotations(@NotNull E element);
+
+    /**
+     * Returns the table that maps the annotations to sides.
+     *
+     * @return the annotation table
+     */
+
+    @NotNull
+    SideAnnotationTable getAnnotationTable();
+
+    /**
+     * Returns the side declared on the element itself, without its parents. Models that can look up the declared
+     * sides faster than by mapping every annotation, for example from an index, override this method.
+     *
+     * @param element the element to get the declared side of
+     * @return the side declared by the annotations of the element
+     */
+
+    @NotNull
+    default Side getDeclaredSide(@NotNull E element) {
+        return getAnnotationTable().getSide(getAnnotations(element));
+    }
+
+    /**
+     * Returns the parents of the element, whose sides the side of the element is intersected with:
+     * its container followed by its supertypes.
+     *
+     * @param element the element to get the parents of
+     * @return the parents of the element
+     */
+
+    @NotNull
+    default List<E> getParents(@NotNull E element) {
+        List<E> supertypes = getSupertypes(element);
+        E container = getContainer(element);
+        if (container == null) return supertypes;
+
+        List<E> parents = new ArrayList<>(supertypes.size() + 1);
+        parents.add(container);
+        parents.addAll(supertypes);
+        return parents;
+    }
+}
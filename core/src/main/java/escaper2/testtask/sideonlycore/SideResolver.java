@@ -0,0 +1,90 @@
+/**
+ * Computes the sides of the elements of a {@link SideModel}. The side of an element is the side declared on it
+ * intersected with the sides of all its parents, transitively, so computing it walks the whole hierarchy above
+ * the element. Sides that are already known are taken from a {@link SideStore}, and every computed side is put
+ * into it, so each element of a hierarchy is only computed once.
+ *
+ * @param <E> the type of the elements of the model
+ */
+
+package escaper2.testtask.sideonlycore;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+
+public final class SideResolver<E> {
+
+    private final SideModel<E> model;
+
+    public SideResolver(@NotNull SideModel<E> model) {
+        this.model = model;
+    }
+
+    /**
+     * Returns the side of the given element, from the store if it is known there and computed otherwise.
+     *
+     * @param element the element to get the side of
+     * @param store   the store to take the known sides from and to put the computed ones into
+     * @return the side of the element
+     */
+
+    @NotNull
+    public Side getSide(@NotNull E element, @NotNull SideStore<E> store) {
+        Side side = store.get(element);
+        return side != null ? side : computeSide(element, store);
+    }
+
+    /**
+     * Computes the side of an element and of all its parents whose sides are not known yet.
+     * The parents are traversed depth-first with an explicit stack, so every ancestor is computed once even in
+     * diamond hierarchies, and its side is stored before the sides of its children. A parent that is still being
+     * computed, which only happens in a cyclic hierarchy, is skipped.
+     * The root is at the bottom of the stack, so the last side taken from the stack is the side of the root.
+     *
+     * @param root  the element to compute the side of
+     * @param store the store to take the known sides from and to put the computed ones into
+     * @return the side of the element
+     */
+
+    @NotNull
+    private Side computeSide(E root, SideStore<E> store) {
+        Map<E, List<E>> parents = new HashMap<>();
+        Map<E, Side> computed = new HashMap<>();
+        Deque<E> stack = new ArrayDeque<>();
+        stack.push(root);
+        Side side = Side.ALL;
+
+        while (!stack.isEmpty()) {
+            E current = stack.peek();
+
+            if (!parents.containsKey(current)) {
+                List<E> currentParents = model.getParents(current);
+                parents.put(current, currentParents);
+                for (E parent : currentParents) {
+                    if (!parents.containsKey(parent) && store.get(parent) == null) stack.push(parent);
+                }
+                continue;
+            }
+
+            stack.pop();
+            Side computedSide = computed.get(current);
+            if (computedSide != null) {
+                side = computedSide;
+                continue;
+            }
+
+            side = model.getDeclaredSide(current);
+            List<E> currentParents = parents.get(current);
+            for (E parent : currentParents) {
+                Side parentSide = computed.get(parent);
+                if (parentSide == null) parentSide = store.get(parent);
+                if (parentSide != null) side = side.intersect(parentSide);
+            }
+            computed.put(current, side);
+            store.put(current, side, currentParents);
+        }
+        return side;
+    }
+}
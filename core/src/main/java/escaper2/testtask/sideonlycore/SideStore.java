@@ -0,0 +1,38 @@
+/**
+ * Where {@link SideResolver} takes the sides that are already known from and stores the sides it computes.
+ * A store may combine several sources, such as an in-memory cache, precomputed tables of libraries
+ * and a persistent cache.
+ *
+ * @param <E> the type of the elements of the model
+ */
+
+package escaper2.testtask.sideonlycore;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+
+public interface SideStore<E> {
+
+    /**
+     * Returns the known side of the given element.
+     *
+     * @param element the element to get the side of
+     * @return the side of the element, or null if it has to be computed
+     */
+
+    @Nullable
+    Side get(@NotNull E element);
+
+    /**
+     * Stores the computed side of the given element together with the parents it was computed from.
+     *
+     * @param element the element whose side was computed
+     * @param side    the side of the element
+     * @param parents the parents whose sides were intersected into the side of the element
+     */
+
+    void put(@NotNull E element, @NotNull Side side, @NotNull List<E> parents);
+}
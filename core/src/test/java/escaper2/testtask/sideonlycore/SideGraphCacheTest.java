@@ -0,0 +1,108 @@
+/**
+ * Tests that {@link SideGraphCache#invalidate} drops exactly the elements computed from the changed one, directly
+ * or through other elements, together with all restored sides.
+ */
+
+package escaper2.testtask.sideonlycore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class SideGraphCacheTest {
+
+    private static final Side SIDE = Side.of(0b01);
+
+    @Test
+    void invalidatesTransitiveDependents() {
+        SideGraphCache<String> cache = new SideGraphCache<>();
+        cache.put("A", SIDE, List.of());
+        cache.put("B", SIDE, List.of("A"));
+        cache.put("C", SIDE, List.of("B"));
+        cache.put("D", SIDE, List.of("B", "X"));
+        cache.put("X", SIDE, List.of());
+
+        cache.invalidate("A");
+
+        assertNull(cache.get("A"));
+        assertNull(cache.get("B"));
+        assertNull(cache.get("C"));
+        assertNull(cache.get("D"));
+        assertSame(SIDE, cache.get("X"));
+    }
+
+    @Test
+    void keepsParentsOfInvalidatedElement() {
+        SideGraphCache<String> cache = new SideGraphCache<>();
+        cache.put("A", SIDE, List.of());
+        cache.put("B", SIDE, List.of("A"));
+
+        cache.invalidate("B");
+
+        assertSame(SIDE, cache.get("A"));
+        assertNull(cache.get("B"));
+    }
+
+    @Test
+    void dropsDependenciesOfInvalidatedElements() {
+        SideGraphCache<String> cache = new SideGraphCache<>();
+        cache.put("A", SIDE, List.of());
+        cache.put("B", SIDE, List.of("A"));
+        cache.put("C", SIDE, List.of("A"));
+        cache.put("D", SIDE, List.of("B", "C"));
+
+        cache.invalidate("A");
+
+        assertNull(cache.get("D"));
+        cache.put("D", SIDE, List.of());
+        cache.invalidate("B");
+        assertSame(SIDE, cache.get("D"));
+    }
+
+    @Test
+    void dropsRestoredSidesOnEveryInvalidation() {
+        SideGraphCache<String> cache = new SideGraphCache<>();
+        cache.putRestored("R", SIDE);
+        cache.put("X", SIDE, List.of());
+
+        cache.invalidate("Y");
+
+        assertNull(cache.get("R"));
+        assertSame(SIDE, cache.get("X"));
+    }
+
+    @Test
+    void dropsComputedSidesOfRestoredParents() {
+        SideGraphCache<String> cache = new SideGraphCache<>();
+        cache.putRestored("R", SIDE);
+        cache.put("B", SIDE, List.of("R"));
+
+        cache.invalidate("Y");
+
+        assertNull(cache.get("R"));
+        assertNull(cache.get("B"));
+    }
+
+    @Test
+    void createsMapsWithFactory() {
+        AtomicInteger created = new AtomicInteger();
+        SideGraphCache<String> cache = new SideGraphCache<>(new SideGraphCache.MapFactory() {
+            @Override
+            public <K, V> Map<K, V> create() {
+                created.incrementAndGet();
+                return new ConcurrentHashMap<>();
+            }
+        });
+        assertEquals(3, created.get());
+
+        cache.put("B", SIDE, List.of("A"));
+        assertEquals(4, created.get());
+        assertSame(SIDE, cache.get("B"));
+    }
+}
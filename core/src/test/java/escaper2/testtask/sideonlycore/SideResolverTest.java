@@ -0,0 +1,183 @@
+/**
+ * Tests {@link SideResolver} on hierarchies given by maps: diamonds, whose common ancestors have to be computed
+ * once, and cycles, which have to terminate.
+ */
+
+package escaper2.testtask.sideonlycore;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class SideResolverTest {
+
+    private Side client;
+    private Side server;
+    private Side proxy;
+
+    @BeforeEach
+    void setNames() {
+        Side.setNames(List.of("CLIENT", "SERVER", "PROXY"));
+        client = Side.byName("CLIENT");
+        server = Side.byName("SERVER");
+        proxy = Side.byName("PROXY");
+    }
+
+    @AfterEach
+    void resetNames() {
+        Side.setNames(List.of("CLIENT", "SERVER"));
+    }
+
+    @Test
+    void intersectsSidesOfDiamond() {
+        MapModel model = new MapModel()
+                .type("A", Side.of(client.getMask() | server.getMask()))
+                .type("B", Side.ALL, "A")
+                .type("C", Side.of(server.getMask() | proxy.getMask()), "A")
+                .type("D", Side.ALL, "B", "C");
+        Store store = new Store();
+
+        assertSame(server, new SideResolver<>(model).getSide("D", store));
+        assertEquals(Map.of("A", 1, "B", 1, "C", 1, "D", 1), model.declaredSideCalls);
+        assertSame(Side.of(client.getMask() | server.getMask()), store.get("B"));
+        assertSame(server, store.get("C"));
+        assertSame(server, store.get("D"));
+    }
+
+    @Test
+    void takesKnownSidesFromStore() {
+        MapModel model = new MapModel()
+                .type("A", Side.ALL)
+                .type("B", Side.ALL, "A")
+                .type("C", Side.ALL, "B");
+        Store store = new Store();
+        store.put("B", proxy, List.of());
+
+        assertSame(proxy, new SideResolver<>(model).getSide("C", store));
+        assertEquals(Map.of("C", 1), model.declaredSideCalls);
+    }
+
+    @Test
+    void includesContainer() {
+        MapModel model = new MapModel()
+                .type("Outer", client)
+                .type("Super", Side.of(client.getMask() | proxy.getMask()))
+                .type("Inner", Side.ALL, "Super")
+                .nested("Outer.method", Side.ALL, "Outer")
+                .nested("Inner", Side.ALL, "Outer");
+
+        SideResolver<String> resolver = new SideResolver<>(model);
+        assertSame(client, resolver.getSide("Outer.method", new Store()));
+        assertSame(client, resolver.getSide("Inner", new Store()));
+    }
+
+    @Test
+    void terminatesOnCycle() {
+        MapModel model = new MapModel()
+                .type("A", client, "B")
+                .type("B", Side.ALL, "C")
+                .type("C", Side.of(client.getMask() | server.getMask()), "A");
+        Store store = new Store();
+
+        assertSame(client, new SideResolver<>(model).getSide("A", store));
+        assertEquals(Map.of("A", 1, "B", 1, "C", 1), model.declaredSideCalls);
+        assertNotNull(store.get("B"));
+        assertNotNull(store.get("C"));
+    }
+
+    @Test
+    void terminatesOnSelfCycle() {
+        MapModel model = new MapModel().type("A", proxy, "A");
+
+        assertSame(proxy, new SideResolver<>(model).getSide("A", new Store()));
+    }
+
+    @Test
+    void emptyIntersectionGivesNone() {
+        MapModel model = new MapModel()
+                .type("ClientClass", client)
+                .type("NoSideClass", server, "ClientClass");
+
+        assertSame(Side.NONE, new SideResolver<>(model).getSide("NoSideClass", new Store()));
+    }
+
+    /**
+     * A model of named elements whose declared sides, supertypes and containers are given by maps.
+     */
+
+    private static final class MapModel implements SideModel<String> {
+        private final Map<String, Side> declaredSides = new HashMap<>();
+        private final Map<String, List<String>> supertypes = new HashMap<>();
+        private final Map<String, String> containers = new HashMap<>();
+        private final Map<String, Integer> declaredSideCalls = new HashMap<>();
+
+        private MapModel type(String name, Side side, String... supertypeNames) {
+            declaredSides.put(name, side);
+            supertypes.put(name, List.of(supertypeNames));
+            return this;
+        }
+
+        private MapModel nested(String name, Side side, String container) {
+            declaredSides.put(name, side);
+            containers.put(name, container);
+            return this;
+        }
+
+        @NotNull
+        @Override
+        public List<String> getSupertypes(@NotNull String element) {
+            return supertypes.getOrDefault(element, List.of());
+        }
+
+        @Nullable
+        @Override
+        public String getContainer(@NotNull String element) {
+            return containers.get(element);
+        }
+
+        @NotNull
+        @Override
+        public List<SideAnnotation> getAnnotations(@NotNull String element) {
+            return List.of();
+        }
+
+        @NotNull
+        @Override
+        public SideAnnotationTable getAnnotationTable() {
+            return new SideAnnotationTable(Map.of());
+        }
+
+        @NotNull
+        @Override
+        public Side getDeclaredSide(@NotNull String element) {
+            declaredSideCalls.merge(element, 1, Integer::sum);
+            return declaredSides.getOrDefault(element, Side.ALL);
+        }
+    }
+
+    /**
+     * A store backed by a {@link SideGraphCache}.
+     */
+
+    private static final class Store implements SideStore<String> {
+        private final SideGraphCache<String> cache = new SideGraphCache<>();
+
+        @Nullable
+        @Override
+        public Side get(@NotNull String element) {
+            return cache.get(element);
+        }
+
+        @Override
+        public void put(@NotNull String element, @NotNull Side side, @NotNull List<String> parents) {
+            cache.put(element, side, parents);
+        }
+    }
+}
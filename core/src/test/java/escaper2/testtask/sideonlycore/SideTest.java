@@ -0,0 +1,87 @@
+/**
+ * Tests the bitmask representation of {@link Side}, in particular with all {@link Side#MAX_SIDES} sides configured,
+ * where the bitmask of {@link Side#ALL} and of the union of all sides is the same.
+ */
+
+package escaper2.testtask.sideonlycore;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+class SideTest {
+
+    @AfterEach
+    void resetNames() {
+        Side.setNames(List.of("CLIENT", "SERVER"));
+    }
+
+    @Test
+    void masksOfAllSixtyFourSides() {
+        Side.setNames(getNames(Side.MAX_SIDES + 1));
+
+        assertEquals(1L, Side.byName("S0").getMask());
+        assertEquals(Long.MIN_VALUE, Side.byName("S63").getMask());
+        assertNull(Side.byName("S64"));
+
+        long union = 0;
+        for (int i = 0; i < Side.MAX_SIDES; i++) union |= Side.byName("S" + i).getMask();
+        assertSame(Side.ALL, Side.of(union));
+        assertEquals(Side.MAX_SIDES, Side.ALL.size());
+    }
+
+    @Test
+    void operationsOnTheHighestSide() {
+        Side.setNames(getNames(Side.MAX_SIDES));
+        Side first = Side.byName("S0");
+        Side last = Side.byName("S63");
+        Side both = Side.of(first.getMask() | last.getMask());
+
+        assertEquals("[S0, S63]", both.toString());
+        assertEquals(2, both.size());
+        assertSame(last, both.intersect(last));
+        assertSame(Side.NONE, first.intersect(last));
+        assertTrue(last.isSubsetOf(both));
+        assertFalse(both.isSubsetOf(last));
+        assertTrue(both.isSubsetOf(Side.ALL));
+    }
+
+    @Test
+    void normalisesAllAndNone() {
+        assertSame(Side.ALL, Side.of(0b11));
+        assertSame(Side.ALL, Side.of(-1L));
+        assertSame(Side.NONE, Side.of(0b100));
+        assertSame(Side.NONE, Side.of(0));
+        assertTrue(Side.NONE.isEmpty());
+        assertEquals(2, Side.ALL.size());
+        assertEquals("[CLIENT, SERVER]", Side.ALL.toString());
+    }
+
+    @Test
+    void internsSides() {
+        Side.setNames(List.of("CLIENT", "SERVER", "PROXY"));
+
+        assertSame(Side.of(0b101), Side.of(0b101));
+        assertSame(Side.byName("SERVER"), Side.of(0b110).intersect(Side.of(0b011)));
+        assertSame(Side.byName("CLIENT"), Side.ALL.intersect(Side.byName("CLIENT")));
+    }
+
+    @Test
+    void ignoresDuplicateNames() {
+        Side.setNames(List.of("CLIENT", "CLIENT", "SERVER"));
+
+        assertEquals(0b10, Side.byName("SERVER").getMask());
+        assertSame(Side.ALL, Side.of(0b11));
+    }
+
+    private static List<String> getNames(int count) {
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) names.add("S" + i);
+        return names;
+    }
+}
@@ -1 +1,3 @@
-rootProject.name = "SideOnlyPlugin"
\ No newline at end of file
+rootProject.name = "SideOnlyPlugin"
+
+include("core")
@@ -0,0 +1,427 @@
+/**
+ * Application level reader of the sides of compiled library classes.
+ * Walking the hierarchy of a library class through compiled PSI loads the stubs of the class and all of its
+ * supertypes. Instead, this reader scans all class files of a library jar once at the bytecode level, resolves
+ * the hierarchy within the jar and keeps the final side of every class and member, keyed like {@link SideOnlyIndex}.
+ * The reader is shared by all open projects. The tables are keyed by a hash of the content of the jar, so projects
+ * depending on the same jar version share one table even if their copies of the jar are at different paths, and
+ * kept in a least recently used cache of {@link #MAX_TABLES} jars, which is halved when memory runs low.
+ * The hash is computed once per jar path and stamp. A jar is scanned on a background thread, until it is ready
+ * the sides are computed from PSI.
+ */
+
+package escaper2.testtask.sideonlyplugin;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.LowMemoryWatcher;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.JarFileSystem;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiCompiledElement;
+import com.intellij.psi.PsiModifierListOwner;
+import com.intellij.psi.util.PsiUtilCore;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.io.DigestUtil;
+import escaper2.testtask.sideonlycore.Side;
+import escaper2.testtask.sideonlycore.SideResolver;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.org.objectweb.asm.ClassReader;
+import org.jetbrains.org.objectweb.asm.ClassVisitor;
+import org.jetbrains.org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+
+@Service
+public final class LibrarySideReader implements Disposable {
+
+    private static final Logger LOG = Logger.getInstance(LibrarySideReader.class);
+
+    /**
+     * Packages of the JDK, whose classes are never restricted, so they don't have to be in the same jar as their
+     * subclasses.
+     */
+
+    private static final List<String> UNRESTRICTED_PACKAGES = List.of("java.", "javax.", "jdk.", "sun.");
+
+    private static final int MAX_TABLES = 16;
+
+    private final ExecutorService executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("SideOnly Library Reader", 1);
+
+    /**
+     * The content hashes of the jars by path, valid as long as the stamp of the jar doesn't change.
+     */
+
+    private final Map<String, JarHash> hashes = new ConcurrentHashMap<>();
+
+    /**
+     * The tables of the jars by content hash, least recently used first.
+     */
+
+    private final Map<String, JarSides> tables = new LinkedHashMap<>(MAX_TABLES, 0.75f, true);
+
+    private final Set<String> scheduled = ConcurrentHashMap.newKeySet();
+
+    public LibrarySideReader() {
+        LowMemoryWatcher.register(this::trim, this);
+    }
+
+    /**
+     * Returns the reader of the application.
+     *
+     * @return the reader instance
+     */
+
+    public static LibrarySideReader getInstance() {
+        return ApplicationManager.getApplication().getService(LibrarySideReader.class);
+    }
+
+    /**
+     * Returns the side of a compiled element of a library jar from the table of the jar.
+     * If the jar is not scanned yet, the scan is scheduled and null is returned.
+     *
+     * @param owner the element to get the side of
+     * @return the side of the element, or null if it is not compiled, not in a jar, not scanned yet, or its
+     *         side depends on classes outside of its jar
+     */
+
+    @Nullable
+    public Side getSide(@NotNull PsiModifierListOwner owner) {
+        if (!(owner instanceof PsiCompiledElement)) return null;
+        VirtualFile file = PsiUtilCore.getVirtualFile(owner);
+        VirtualFile jar = file == null ? null : JarFileSystem.getInstance().getVirtualFileForJar(file);
+        if (jar == null) return null;
+
+        JarSides sides = getJarSides(jar);
+        if (sides == null) return null;
+
+        String key = SideOnlyIndex.getKey(owner);
+        Long mask = key == null ? null : sides.masks.get(key);
+        return mask == null ? null : Side.of(mask);
+    }
+
+    /**
+     * Returns the table of the given jar if it is up to date, and schedules a scan of the jar otherwise.
+     *
+     * @param jar the jar file
+     * @return the table of the jar, or null if it is being scanned
+     */
+
+    @Nullable
+    private JarSides getJarSides(VirtualFile jar) {
+        String path = jar.getPath();
+        long stamp = getStamp(jar);
+        long settingsStamp = SideOnlySettings.getInstance().getModificationCount();
+
+        JarHash hash = hashes.get(path);
+        if (hash != null && hash.stamp == stamp) {
+            JarSides sides;
+            synchronized (tables) {
+                sides = tables.get(hash.hash);
+            }
+            if (sides != null && sides.settingsStamp == settingsStamp) return sides;
+        }
+
+        File ioFile = VfsUtilCore.virtualToIoFile(jar);
+        if (scheduled.add(path)) {
+            executor.execute(() -> {
+                try {
+                    scan(path, ioFile, stamp, settingsStamp);
+                }
+                finally {
+                    scheduled.remove(path);
+                }
+            });
+        }
+        return null;
+    }
+
+    /**
+     * Computes the content hash of a jar and reads its table unless a table with the same hash is already cached.
+     */
+
+    private void scan(String path, File jar, long stamp, long settingsStamp) {
+        String hash;
+        try {
+            hash = computeHash(jar);
+        }
+        catch (IOException e) {
+            LOG.info("Can't read " + path, e);
+            return;
+        }
+        hashes.put(path, new JarHash(stamp, hash));
+
+        synchronized (tables) {
+            JarSides sides = tables.get(hash);
+            if (sides != null && sides.settingsStamp == settingsStamp) return;
+        }
+
+        Map<String, Long> masks;
+        try {
+            masks = readJar(jar);
+        }
+        catch (IOException | RuntimeException e) {
+            LOG.info("Can't read sides of " + path, e);
+            masks = Collections.emptyMap();
+        }
+
+        synchronized (tables) {
+            tables.put(hash, new JarSides(settingsStamp, masks));
+            Iterator<String> iterator = tables.keySet().iterator();
+            while (tables.size() > MAX_TABLES) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops the least recently used half of the tables.
+     */
+
+    private void trim() {
+        synchronized (tables) {
+            Iterator<String> iterator = tables.keySet().iterator();
+            for (int count = tables.size() / 2; count > 0; count--) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public void dispose() {
+    }
+
+    /**
+     * Computes a hash of the content of a jar from its central directory: the names, sizes and checksums of all
+     * entries. This identifies the content of the jar without reading the compressed data.
+     *
+     * @param jar the jar file
+     * @return the content hash
+     * @throws IOException if the jar can't be read
+     */
+
+    private static String computeHash(File jar) throws IOException {
+        MessageDigest digest = DigestUtil.sha256();
+        try (ZipFile zip = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                digest.update(entry.getName().getBytes(StandardCharsets.UTF_8));
+                digest.update(Long.toString(entry.getSize()).getBytes(StandardCharsets.UTF_8));
+                digest.update(Long.toString(entry.getCrc()).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return StringUtil.toHexString(digest.digest());
+    }
+
+    private static long getStamp(VirtualFile jar) {
+        return jar.getTimeStamp() * 31 + jar.getLength();
+    }
+
+    /**
+     * Reads the declared sides and the hierarchy of all classes of a jar and computes the final sides.
+     *
+     * @param jar the jar file
+     * @return the map from declaration keys to the bitmasks of their final sides
+     * @throws IOException if the jar can't be read
+     */
+
+    private static Map<String, Long> readJar(File jar) throws IOException {
+        Map<String, Long> declared = new HashMap<>();
+        Map<String, ClassInfo> classes = new HashMap<>();
+
+        try (ZipFile zip = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory() || !entry.getName().endsWith(".class")) continue;
+
+                try (InputStream stream = zip.getInputStream(entry)) {
+                    ClassInfo info = new ClassInfo();
+                    new ClassReader(FileUtil.loadBytes(stream)).accept(info.createVisitor(declared),
+                            ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+                    if (info.name != null) classes.put(info.name, info);
+                }
+            }
+        }
+        return computeSides(declared, classes);
+    }
+
+    /**
+     * Computes the final sides of the classes of a jar and of their members. A class whose outer class,
+     * superclass or interface is neither in the jar nor a JDK class is left out, as are local and anonymous
+     * classes, so they are computed from PSI.
+     *
+     * @param declared the declared sides of the classes and members of the jar
+     * @param classes  the classes of the jar by qualified name
+     * @return the map from declaration keys to the bitmasks of their final sides
+     */
+
+    private static Map<String, Long> computeSides(Map<String, Long> declared, Map<String, ClassInfo> classes) {
+        Map<String, Long> classSides = new HashMap<>();
+        for (String className : classes.keySet()) computeClassSide(className, classes, declared, classSides);
+
+        Map<String, Long> sides = new HashMap<>();
+        for (Map.Entry<String, Long> entry : classSides.entrySet()) {
+            if (entry.getValue() != null) sides.put(entry.getKey(), entry.getValue());
+        }
+
+        for (Map.Entry<String, Long> entry : declared.entrySet()) {
+            String key = entry.getKey();
+            int memberStart = key.indexOf('#');
+            if (memberStart < 0 || entry.getValue() == SideOnlyIndex.AMBIGUOUS) continue;
+
+            Long classSide = sides.get(key.substring(0, memberStart));
+            if (classSide != null) sides.put(key, entry.getValue() & classSide);
+        }
+        return sides;
+    }
+
+    /**
+     * Computes the final side of a class of the jar and of its ancestors in the jar. The ancestors are traversed
+     * depth-first with an explicit stack, like in {@link SideResolver}.
+     *
+     * @return the bitmask of the final side, or null if it can't be computed from the jar alone
+     */
+
+    @Nullable
+    private static Long computeClassSide(String root, Map<String, ClassInfo> classes, Map<String, Long> declared, Map<String, Long> classSides) {
+        Deque<String> stack = new ArrayDeque<>();
+        Set<String> visiting = new HashSet<>();
+        stack.push(root);
+
+        while (!stack.isEmpty()) {
+            String current = stack.peek();
+            if (classSides.containsKey(current)) {
+                stack.pop();
+                continue;
+            }
+
+            ClassInfo info = classes.get(current);
+            if (visiting.add(current)) {
+                for (String parent : info.getParents()) {
+                    if (classes.containsKey(parent) && !classSides.containsKey(parent) && !visiting.contains(parent)) stack.push(parent);
+                }
+                continue;
+            }
+
+            stack.pop();
+            Long side = info.isLocal ? null : declared.getOrDefault(current, Side.ALL.getMask());
+            if (side != null && side == SideOnlyIndex.AMBIGUOUS) side = null;
+            for (String parent : info.getParents()) {
+                if (side == null) break;
+                if (classes.containsKey(parent)) {
+                    Long parentSide = classSides.get(parent);
+                    side = parentSide == null ? null : side & parentSide;
+                }
+                else if (UNRESTRICTED_PACKAGES.stream().noneMatch(parent::startsWith)) side = null;
+            }
+            classSides.put(current, side);
+        }
+        return classSides.get(root);
+    }
+
+    /**
+     * The content hash of a jar, together with the stamp of the jar it was computed for.
+     */
+
+    private static final class JarHash {
+        private final long stamp;
+        private final String hash;
+
+        private JarHash(long stamp, String hash) {
+            this.stamp = stamp;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * The final sides of the declarations of a jar, together with the stamp of the settings they were computed for.
+     */
+
+    private static final class JarSides {
+        private final long settingsStamp;
+        private final Map<String, Long> masks;
+
+        private JarSides(long settingsStamp, Map<String, Long> masks) {
+            this.settingsStamp = settingsStamp;
+            this.masks = masks;
+        }
+    }
+
+    /**
+     * The hierarchy of a single class of a jar, as read from the bytecode.
+     */
+
+    private static final class ClassInfo {
+        private String name;
+        private String outerName;
+        private String superName;
+        private String[] interfaces;
+        private boolean isLocal;
+
+        private ClassVisitor createVisitor(Map<String, Long> declared) {
+            return new ClassVisitor(Opcodes.ASM9, SideOnlyIndex.createDeclarationsVisitor(declared)) {
+                private String internalName;
+
+                @Override
+                public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                    internalName = name;
+                    ClassInfo.this.name = toQualifiedName(name);
+                    ClassInfo.this.superName = superName == null ? null : toQualifiedName(superName);
+                    ClassInfo.this.interfaces = Arrays.stream(interfaces).map(ClassInfo::toQualifiedName).toArray(String[]::new);
+                    super.visit(version, access, name, signature, superName, interfaces);
+                }
+
+                @Override
+                public void visitOuterClass(String owner, String name, String descriptor) {
+                    isLocal = true;
+                    super.visitOuterClass(owner, name, descriptor);
+                }
+
+                @Override
+                public void visitInnerClass(String name, String outerName, String innerName, int access) {
+                    if (name.equals(internalName)) {
+                        if (outerName == null || innerName == null) isLocal = true;
+                        else ClassInfo.this.outerName = toQualifiedName(outerName);
+                    }
+                    super.visitInnerClass(name, outerName, innerName, access);
+                }
+            };
+        }
+
+        /**
+         * Returns the parent classes like {@link PsiSideModel} sees them: the outer class, the interfaces and
+         * the superclass unless it is {@code java.lang.Object}.
+         */
+
+        private List<String> getParents() {
+            List<String> parents = new ArrayList<>();
+            if (outerName != null) parents.add(outerName);
+            Collections.addAll(parents, interfaces);
+            if (superName != null && !superName.equals("java.lang.Object")) parents.add(superName);
+            return parents;
+        }
+
+        private static String toQualifiedName(String internalName) {
+            return internalName.replace('/', '.').replace('$', '.');
+        }
+    }
+}
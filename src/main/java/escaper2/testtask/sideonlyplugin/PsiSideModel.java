@@ -0,0 +1,202 @@
+/**
+ * Adapts PSI onto the {@link SideModel} of the core engine. Classes are the types of the model and methods and fields
+ * its members. The parents of a class are its containing class, its interfaces and its superclass other than
+ * {@code Object}; the parents of an anonymous class are its interfaces and the method it is declared in.
+ * The declared sides are taken from {@link SideOnlyIndex} when possible, and the side annotations are only read
+ * from PSI for the declarations the index doesn't cover.
+ */
+
+package escaper2.testtask.sideonlyplugin;
+
+import com.intellij.openapi.project.DumbService;
+import com.intellij.psi.*;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
+import com.intellij.psi.util.PsiTreeUtil;
+import escaper2.testtask.sideonlycore.Side;
+import escaper2.testtask.sideonlycore.SideAnnotation;
+import escaper2.testtask.sideonlycore.SideAnnotationTable;
+import escaper2.testtask.sideonlycore.SideModel;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+
+public final class PsiSideModel implements SideModel<PsiModifierListOwner> {
+
+    public static final PsiSideModel INSTANCE = new PsiSideModel();
+
+    private PsiSideModel() {
+    }
+
+    @NotNull
+    @Override
+    public List<PsiModifierListOwner> getSupertypes(@NotNull PsiModifierListOwner element) {
+        if (!(element instanceof PsiClass)) return Collections.emptyList();
+        PsiClass psiClass = (PsiClass) element;
+
+        List<PsiModifierListOwner> supertypes = new ArrayList<>(Arrays.asList(psiClass.getInterfaces()));
+        if (psiClass instanceof PsiAnonymousClass) return supertypes;
+
+        PsiClass superClass = psiClass.getSuperClass();
+        if (superClass != null && !CommonClassNames.JAVA_LANG_OBJECT.equals(superClass.getQualifiedName())) supertypes.add(superClass);
+        return supertypes;
+    }
+
+    @Nullable
+    @Override
+    public PsiModifierListOwner getContainer(@NotNull PsiModifierListOwner element) {
+        if (element instanceof PsiAnonymousClass) return PsiTreeUtil.getParentOfType(element, PsiMethod.class);
+        if (element instanceof PsiMember) return ((PsiMember) element).getContainingClass();
+        return null;
+    }
+
+    @NotNull
+    @Override
+    public List<SideAnnotation> getAnnotations(@NotNull PsiModifierListOwner element) {
+        List<SideAnnotation> annotations = new ArrayList<>();
+        for (PsiAnnotation annotation : element.getAnnotations()) {
+            SideAnnotation sideAnnotation = getSideAnnotation(annotation);
+            if (sideAnnotation != null) annotations.add(sideAnnotation);
+        }
+        return annotations;
+    }
+
+    @NotNull
+    @Override
+    public SideAnnotationTable getAnnotationTable() {
+        return SideOnlySettings.getInstance().getTable();
+    }
+
+    /**
+     * Gets the side(s) declared on a PsiModifierListOwner itself, from the index if possible and from PSI otherwise.
+     *
+     * @param element The PsiModifierListOwner to get the declared side(s) of.
+     * @return The side(s) declared by the annotations of the owner.
+     */
+
+    @NotNull
+    @Override
+    public Side getDeclaredSide(@NotNull PsiModifierListOwner element) {
+        Side side = SideOnlyIndex.getIndexedSide(element);
+        return side != null ? side : getAnnotatedSide(element);
+    }
+
+    /**
+     * Gets the side(s) declared by the annotations of a PsiModifierListOwner itself, without its parent elements.
+     * Only the side annotations and their explicitly written values are taken into account, see {@link SideAnnotations}.
+     *
+     * @param owner The PsiModifierListOwner to get the declared side(s) of.
+     * @return The side(s) declared by the annotations of the owner.
+     */
+
+    @NotNull
+    public Side getAnnotatedSide(@NotNull PsiModifierListOwner owner) {
+        return getAnnotationTable().getSide(getAnnotations(owner));
+    }
+
+    /**
+     * Returns true if the given element has a SideOnly annotation itself, false otherwise.
+     *
+     * @param owner the element to check for a SideOnly annotation
+     * @return true if the given element has a SideOnly annotation, false otherwise
+     */
+
+    public static boolean hasSideAnnotation(PsiModifierListOwner owner) {
+        for (PsiAnnotation annotation : owner.getAnnotations()) {
+            if (SideAnnotations.isSideAnnotation(annotation)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets a single side annotation together with the constants listed in its value. Annotations whose short name
+     * is not configured are skipped right away. In physical files outside of dumb mode the referenced constants are
+     * resolved and the result is cached on the annotation until the next PSI change or settings change.
+     * Otherwise, most notably while indexing, the constants are taken by their referenced names.
+     * A resolved value that refers to anything but the constants listed for the annotation, for example a compiled
+     * constant whose value can't be followed, gives an unknown side, so the annotation is skipped instead of
+     * restricting the declaration to no side at all.
+     *
+     * @param annotation The annotation to read.
+     * @return The side annotation, or null if it is not a side annotation, has no explicit value or an unknown side.
+     */
+
+    @Nullable
+    private static SideAnnotation getSideAnnotation(PsiAnnotation annotation) {
+        if (!SideAnnotations.hasSideShortName(annotation)) return null;
+        if (!annotation.isPhysical() || DumbService.isDumb(annotation.getProject())) return computeSideAnnotation(annotation, false);
+
+        return CachedValuesManager.getCachedValue(annotation, () -> CachedValueProvider.Result.create(
+                computeSideAnnotation(annotation, true),
+                PsiModificationTracker.MODIFICATION_COUNT,
+                SideOnlySettings.getInstance()));
+    }
+
+    @Nullable
+    private static SideAnnotation computeSideAnnotation(PsiAnnotation annotation, boolean resolve) {
+        SideAnnotationTable.Mapping mapping = SideAnnotations.getMapping(annotation);
+        if (mapping == null) return null;
+
+        PsiAnnotationMemberValue value = annotation.findDeclaredAttributeValue("value");
+        if (value == null) return null;
+
+        List<String> constants = new ArrayList<>();
+        collectConstants(value, resolve, new HashSet<>(), constants);
+        if (resolve && !mapping.hasConstants(constants)) return null;
+        return new SideAnnotation(mapping.getQualifiedName(), constants);
+    }
+
+    /**
+     * Collects the names of the enum constants referenced by an annotation value. Array initializers are walked
+     * element by element. A reference that resolves to a constant field which is not an enum constant itself is
+     * followed to the initializer of that field. If the field has no initializer to follow, such as a compiled
+     * field, the referenced name is taken.
+     *
+     * @param value     The annotation value or one of its nested values.
+     * @param resolve   Whether the references may be resolved.
+     * @param visited   The fields already followed, to stop on cyclic constant definitions.
+     * @param constants The list to add the names of the constants to.
+     */
+
+    private static void collectConstants(PsiElement value, boolean resolve, Set<PsiField> visited, List<String> constants) {
+        if (value instanceof PsiArrayInitializerMemberValue) {
+            for (PsiAnnotationMemberValue initializer : ((PsiArrayInitializerMemberValue) value).getInitializers()) {
+                collectConstants(initializer, resolve, visited, constants);
+            }
+            return;
+        }
+
+        if (value instanceof PsiArrayInitializerExpression) {
+            for (PsiExpression initializer : ((PsiArrayInitializerExpression) value).getInitializers()) {
+                collectConstants(initializer, resolve, visited, constants);
+            }
+            return;
+        }
+
+        if (value instanceof PsiParenthesizedExpression) {
+            collectConstants(((PsiParenthesizedExpression) value).getExpression(), resolve, visited, constants);
+            return;
+        }
+
+        if (!(value instanceof PsiReferenceExpression)) return;
+        PsiReferenceExpression reference = (PsiReferenceExpression) value;
+
+        String name = reference.getReferenceName();
+        if (resolve) {
+            PsiElement resolved = reference.resolve();
+            if (resolved instanceof PsiEnumConstant) name = ((PsiEnumConstant) resolved).getName();
+            else if (resolved instanceof PsiField && visited.add((PsiField) resolved)) {
+                PsiExpression initializer = ((PsiField) resolved).getInitializer();
+                if (initializer != null) {
+                    collectConstants(initializer, true, visited, constants);
+                    return;
+                }
+            }
+        }
+
+        if (name != null) constants.add(name);
+    }
+}
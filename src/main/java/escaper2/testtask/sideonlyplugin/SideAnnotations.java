@@ -0,0 +1,116 @@
+/**
+ * Recognizes the annotations that declare sides, as configured in {@link SideOnlySettings}. An annotation is matched
+ * by its qualified name, but the short name of its reference is looked up in the table of the settings first, so for
+ * the vast majority of annotations, such as {@code @Override} or {@code @Nullable}, nothing has to be resolved and
+ * no attribute has to be looked up.
+ */
+
+package escaper2.testtask.sideonlyplugin;
+
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.*;
+import escaper2.testtask.sideonlycore.SideAnnotationTable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+
+public final class SideAnnotations {
+
+    private SideAnnotations() {
+    }
+
+    /**
+     * Returns true if the given annotation is a side annotation.
+     *
+     * @param annotation the annotation to check
+     * @return true if the annotation declares sides
+     */
+
+    public static boolean isSideAnnotation(@NotNull PsiAnnotation annotation) {
+        return getMapping(annotation) != null;
+    }
+
+    /**
+     * Returns true if the short name of the given annotation is the short name of a side annotation.
+     * This is a constant time lookup that neither resolves the annotation nor reads its attributes.
+     *
+     * @param annotation the annotation to check
+     * @return false if the annotation can't be a side annotation
+     */
+
+    public static boolean hasSideShortName(@NotNull PsiAnnotation annotation) {
+        PsiJavaCodeReferenceElement reference = annotation.getNameReferenceElement();
+        String shortName = reference == null ? null : reference.getReferenceName();
+        return shortName != null && !SideOnlySettings.getInstance().getMappings(shortName).isEmpty();
+    }
+
+    /**
+     * Returns the mapping of the given annotation if it is a side annotation. The qualified name is resolved only
+     * if the short name is in the table. In dumb mode and in files that are not physical, such as the files being
+     * indexed, the qualified name is taken from the imports of the file instead of being resolved.
+     *
+     * @param annotation the annotation to get the mapping of
+     * @return the mapping of the annotation, or null if it doesn't declare sides
+     */
+
+    @Nullable
+    public static SideAnnotationTable.Mapping getMapping(@NotNull PsiAnnotation annotation) {
+        PsiJavaCodeReferenceElement reference = annotation.getNameReferenceElement();
+        String shortName = reference == null ? null : reference.getReferenceName();
+        if (shortName == null) return null;
+
+        List<SideAnnotationTable.Mapping> mappings = SideOnlySettings.getInstance().getMappings(shortName);
+        if (mappings.isEmpty()) return null;
+
+        if (annotation.isPhysical() && !DumbService.isDumb(annotation.getProject())) {
+            return getMapping(annotation.getQualifiedName());
+        }
+        return getImportedMapping(reference, shortName);
+    }
+
+    /**
+     * Returns the mapping of the annotation with the given qualified name.
+     *
+     * @param qualifiedName the qualified name of an annotation, with nested classes separated by dots
+     * @return the mapping of the annotation, or null if it doesn't declare sides
+     */
+
+    @Nullable
+    public static SideAnnotationTable.Mapping getMapping(@Nullable String qualifiedName) {
+        return qualifiedName == null ? null : SideOnlySettings.getInstance().getMapping(qualifiedName);
+    }
+
+    /**
+     * Returns the mapping of the annotation the given reference refers to, judging by its text and the
+     * imports and package of its file only.
+     *
+     * @param reference the name reference of the annotation
+     * @param shortName the referenced short name
+     * @return the mapping of the annotation, or null if the reference can't refer to a side annotation
+     */
+
+    @Nullable
+    private static SideAnnotationTable.Mapping getImportedMapping(PsiJavaCodeReferenceElement reference, String shortName) {
+        if (reference.isQualified()) return getMapping(StringUtil.replace(reference.getText(), " ", ""));
+
+        PsiFile file = reference.getContainingFile();
+        if (!(file instanceof PsiJavaFile)) return getMapping(shortName);
+
+        PsiJavaFile javaFile = (PsiJavaFile) file;
+        PsiImportList importList = javaFile.getImportList();
+        if (importList != null) {
+            PsiImportStatement singleImport = importList.findSingleClassImportStatement(shortName);
+            if (singleImport != null) return getMapping(singleImport.getQualifiedName());
+
+            for (PsiImportStatement statement : importList.getImportStatements()) {
+                if (!statement.isOnDemand()) continue;
+                SideAnnotationTable.Mapping mapping = getMapping(StringUtil.getQualifiedName(statement.getQualifiedName(), shortName));
+                if (mapping != null) return mapping;
+            }
+        }
+        return getMapping(StringUtil.getQualifiedName(javaFile.getPackageName(), shortName));
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Project level cache of the sides computed for code elements.
+ * The side of an element depends on its own annotations and on every parent element, so computing it walks
+ * the whole class hierarchy. This service remembers the computed side of each element, so the inspection and
+ * the inlay hints share the results instead of walking the same hierarchy for every reference.
+ * The cache also remembers which elements were computed from which parents, see {@link SideGraphCache}. A change
+ * of a single declaration only drops the sides of that declaration and of the elements computed from it, while
+ * changes of the class hierarchy drop the whole cache. Sides restored from {@link SidePersistentCache} are not
+ * linked to their parents, so they are dropped on every change of a declaration and validated against the files again.
+ */
+
+package escaper2.testtask.sideonlyplugin;
+
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiModifierListOwner;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.util.containers.ContainerUtil;
+import escaper2.testtask.sideonlycore.Side;
+import escaper2.testtask.sideonlycore.SideGraphCache;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+
+
+@Service
+public final class SideCache {
+
+    private final Project project;
+
+    public SideCache(@NotNull Project project) {
+        this.project = project;
+    }
+
+    /**
+     * Returns the cache of the given project.
+     *
+     * @param project the project to get the cache for
+     * @return the cache instance of the project
+     */
+
+    public static SideCache getInstance(@NotNull Project project) {
+        return project.getService(SideCache.class);
+    }
+
+    /**
+     * Returns the cached side of the given element.
+     *
+     * @param owner the element to get the side of
+     * @return the side of the element, or null if it is not cached
+     */
+
+    @Nullable
+    public Side get(@NotNull PsiModifierListOwner owner) {
+        return getEntries().get(owner);
+    }
+
+    /**
+     * Stores the computed side of the given element together with the parent elements it was computed from.
+     *
+     * @param owner   the element whose side was computed
+     * @param side    the side of the element
+     * @param parents the parent elements whose sides were intersected into the side of the element
+     */
+
+    public void put(@NotNull PsiModifierListOwner owner, @NotNull Side side, @NotNull Collection<PsiModifierListOwner> parents) {
+        getEntries().put(owner, side, parents);
+    }
+
+    /**
+     * Stores a side restored from the persistent cache, whose parent elements are not known.
+     *
+     * @param owner the element whose side was restored
+     * @param side  the side of the element
+     */
+
+    public void putRestored(@NotNull PsiModifierListOwner owner, @NotNull Side side) {
+        getEntries().putRestored(owner, side);
+    }
+
+    /**
+     * Drops the cached side of the given element and of all elements whose sides were computed from it,
+     * directly or through other elements, as well as all restored sides.
+     *
+     * @param owner the element whose declaration was changed
+     */
+
+    public void invalidate(@NotNull PsiModifierListOwner owner) {
+        getEntries().invalidate(owner);
+    }
+
+    /**
+     * Returns the cached entries, which are dropped whenever the class hierarchy of the project is modified.
+     * Changes inside method bodies don't drop them, see {@link SideModificationTracker}. The entries are held with
+     * weak keys, so they don't keep the elements from being collected.
+     *
+     * @return the cached sides and dependencies
+     */
+
+    private SideGraphCache<PsiModifierListOwner> getEntries() {
+        return CachedValuesManager.getManager(project).getCachedValue(project, () -> CachedValueProvider.Result.create(
+                new SideGraphCache<PsiModifierListOwner>(ContainerUtil::createConcurrentWeakMap),
+                SideModificationTracker.getInstance(project).getHierarchyTracker()));
+    }
+}
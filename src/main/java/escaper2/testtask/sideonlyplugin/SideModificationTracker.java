@@ -0,0 +1,232 @@
+/**
+ * Tracks modifications of the project code that can change the side of an element.
+ * Sides depend only on declarations, annotations and the class hierarchy, never on the statements inside
+ * method bodies and field initializers, so changes inside them are ignored and typing inside a method keeps
+ * all computed sides valid. The only exception are the initializers of constant fields that may alias the enum
+ * constants used in side annotations. Every other PSI change increments the modification count.
+ * Changes that are confined to a single declaration only drop the cached sides of that declaration and of the
+ * elements depending on it from {@link SideCache}, all other changes increment the hierarchy modification count,
+ * which drops the whole cache. Changes of the {@link SideOnlySettings} count as modifications of both kinds.
+ */
+
+package escaper2.testtask.sideonlyplugin;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.ModificationTracker;
+import com.intellij.openapi.util.SimpleModificationTracker;
+import com.intellij.psi.*;
+import com.intellij.psi.tree.TokenSet;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.PsiUtil;
+import org.jetbrains.annotations.NotNull;
+
+
+@Service
+public final class SideModificationTracker implements ModificationTracker, Disposable {
+
+    /**
+     * The tokens of a class body that can be added or removed without affecting any side.
+     */
+
+    private static final TokenSet TRIVIA_TOKENS = TokenSet.create(JavaTokenType.LBRACE, JavaTokenType.RBRACE, JavaTokenType.SEMICOLON);
+
+    private final SimpleModificationTracker tracker = new SimpleModificationTracker();
+    private final SimpleModificationTracker hierarchyTracker = new SimpleModificationTracker();
+    private final Project project;
+
+    public SideModificationTracker(@NotNull Project project) {
+        this.project = project;
+        PsiManager.getInstance(project).addPsiTreeChangeListener(new PsiTreeChangeAdapter() {
+            @Override
+            public void childAdded(@NotNull PsiTreeChangeEvent event) {
+                onChange(event);
+            }
+
+            @Override
+            public void childRemoved(@NotNull PsiTreeChangeEvent event) {
+                onChange(event);
+            }
+
+            @Override
+            public void childReplaced(@NotNull PsiTreeChangeEvent event) {
+                onChange(event);
+            }
+
+            @Override
+            public void childMoved(@NotNull PsiTreeChangeEvent event) {
+                onChange(event);
+            }
+
+            @Override
+            public void childrenChanged(@NotNull PsiTreeChangeEvent event) {
+                onChange(event);
+            }
+
+            @Override
+            public void propertyChanged(@NotNull PsiTreeChangeEvent event) {
+                tracker.incModificationCount();
+                hierarchyTracker.incModificationCount();
+            }
+        }, this);
+    }
+
+    /**
+     * Returns the tracker of the given project.
+     *
+     * @param project the project to get the tracker for
+     * @return the tracker instance of the project
+     */
+
+    public static SideModificationTracker getInstance(@NotNull Project project) {
+        return project.getService(SideModificationTracker.class);
+    }
+
+    @Override
+    public long getModificationCount() {
+        return tracker.getModificationCount() + SideOnlySettings.getInstance().getModificationCount();
+    }
+
+    /**
+     * Returns the tracker of the changes that may affect the class hierarchy or the resolution of supertypes,
+     * as opposed to changes confined to a single declaration. Changes of the side annotation settings count too.
+     *
+     * @return the hierarchy modification tracker
+     */
+
+    public ModificationTracker getHierarchyTracker() {
+        return () -> hierarchyTracker.getModificationCount() + SideOnlySettings.getInstance().getModificationCount();
+    }
+
+    @Override
+    public void dispose() {
+    }
+
+    /**
+     * Increments the modification count unless the change happened in a file without classes
+     * or inside a code block. Then either drops the cached sides of the changed declaration or,
+     * if the change is not confined to a single declaration, increments the hierarchy modification count.
+     *
+     * @param event the PSI change event
+     */
+
+    private void onChange(PsiTreeChangeEvent event) {
+        PsiFile file = event.getFile();
+        if (file != null && !(file instanceof PsiClassOwner)) return;
+        if (isInsideCode(event.getParent())) return;
+        tracker.incModificationCount();
+
+        if (!invalidateChangedDeclaration(event)) hierarchyTracker.incModificationCount();
+    }
+
+    /**
+     * Drops the cached sides affected by a change confined to a single declaration: a change of a method or field
+     * header, of the modifier list of a class, or members added to or removed from a class body.
+     *
+     * @param event the PSI change event
+     * @return true if the change was handled, false if it may affect the class hierarchy
+     */
+
+    private boolean invalidateChangedDeclaration(PsiTreeChangeEvent event) {
+        PsiElement parent = event.getParent();
+        PsiMember member = PsiTreeUtil.getParentOfType(parent, PsiMember.class, false);
+        if (member == null) return false;
+
+        if (member instanceof PsiField && isSideConstant((PsiField) member) && isInitializerChange((PsiField) member, event)) return false;
+
+        if (!(member instanceof PsiClass)) {
+            SideCache.getInstance(project).invalidate(member);
+            SideNameFilter.getInstance(project).declarationChanged(member);
+            return true;
+        }
+
+        PsiClass psiClass = (PsiClass) member;
+        if (PsiTreeUtil.isAncestor(psiClass.getModifierList(), parent, false)) {
+            SideCache.getInstance(project).invalidate(psiClass);
+            SideNameFilter.getInstance(project).declarationChanged(psiClass);
+            return true;
+        }
+
+        if (parent != psiClass) return false;
+        if (event.getChild() == null && event.getOldChild() == null && event.getNewChild() == null) return false;
+        if (!isMemberOrTrivia(event.getChild()) || !isMemberOrTrivia(event.getOldChild()) || !isMemberOrTrivia(event.getNewChild())) return false;
+
+        recordAddedMember(event.getChild());
+        recordAddedMember(event.getNewChild());
+        return true;
+    }
+
+    private void recordAddedMember(PsiElement child) {
+        if (child instanceof PsiMember) SideNameFilter.getInstance(project).declarationChanged((PsiMember) child);
+    }
+
+    /**
+     * Returns true if adding or removing the given child of a class body can't change any side: new members
+     * are not cached yet and removed ones are not referenced anymore. Nested classes may change how supertypes
+     * are resolved, and so do the name and the {@code class} or {@code interface} keyword of the class itself,
+     * so they are not included.
+     *
+     * @param child the added, removed or replaced child, or null
+     * @return true if the child is a method, a field, whitespace, a comment, a brace or a semicolon
+     */
+
+    private static boolean isMemberOrTrivia(PsiElement child) {
+        return child == null || child instanceof PsiMethod || child instanceof PsiField || child instanceof PsiWhiteSpace
+                || child instanceof PsiComment || PsiUtil.isJavaToken(child, TRIVIA_TOKENS);
+    }
+
+    /**
+     * Returns true if the given change replaces the initializer of a field or happens inside it. The annotations
+     * declaring sides may refer to constant fields aliasing enum constants, and those annotations are not linked
+     * to the fields in {@link SideCache}, so such a change of a constant has to drop all cached sides.
+     *
+     * @param field the field containing the change
+     * @param event the PSI change event
+     * @return true if the initializer of the field is changed
+     */
+
+    private static boolean isInitializerChange(PsiField field, PsiTreeChangeEvent event) {
+        PsiExpression initializer = field.getInitializer();
+        if (initializer != null && PsiTreeUtil.isAncestor(initializer, event.getParent(), false)) return true;
+        return event.getParent() == field && (event.getChild() instanceof PsiExpression
+                || event.getOldChild() instanceof PsiExpression || event.getNewChild() instanceof PsiExpression);
+    }
+
+    /**
+     * Returns true if the given field may alias enum constants in the values of side annotations,
+     * that is if it is a constant of an enum type or of an array of an enum type.
+     *
+     * @param field the field to check
+     * @return true if the field may be referenced by a side annotation
+     */
+
+    private static boolean isSideConstant(PsiField field) {
+        if (!field.hasModifierProperty(PsiModifier.STATIC) || !field.hasModifierProperty(PsiModifier.FINAL)) return false;
+        if (DumbService.isDumb(field.getProject())) return true;
+
+        PsiType type = field.getType().getDeepComponentType();
+        if (!(type instanceof PsiClassType)) return false;
+        PsiClass fieldClass = ((PsiClassType) type).resolve();
+        return fieldClass == null || fieldClass.isEnum();
+    }
+
+    /**
+     * Returns true if the given element is located inside a code block or the initializer of a field that can't
+     * be referenced by a side annotation, and not inside a declaration that is nested into them.
+     *
+     * @param element the parent of the changed PSI elements
+     * @return true if the change can't affect the side of any element
+     */
+
+    private static boolean isInsideCode(PsiElement element) {
+        while (element != null && !(element instanceof PsiFile)) {
+            if (element instanceof PsiCodeBlock) return true;
+            if (element instanceof PsiExpression && element.getParent() instanceof PsiField) return !isSideConstant((PsiField) element.getParent());
+            if (element instanceof PsiClass) return false;
+            element = element.getParent();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * Project level Bloom filter of the simple names of all classes and members whose side is restricted.
+ * A reference whose name is not in the filter can't point to a restricted element, so the inspection
+ * doesn't have to resolve it. The filter is built from the annotated declarations found in {@link SideOnlyIndex},
+ * extended by all members, nested classes and inheritors of the restricted classes, because those are
+ * restricted without being annotated themselves.
+ * Building the filter searches the inheritors of every restricted class, so it is built in the background and only
+ * when the class hierarchy or the project roots change, as tracked by {@link SideModificationTracker}, which ignores
+ * edits inside code blocks. Methods and fields changed in the meantime are added to it incrementally.
+ * The analysis of a file takes a {@link Snapshot} of the filter once and looks up all its names in it, so checking
+ * a single name is only a few bit tests.
+ */
+
+package escaper2.testtask.sideonlyplugin;
+
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiField;
+import com.intellij.psi.PsiMember;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+@Service
+public final class SideNameFilter {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    /**
+     * Names of the references that resolve to constructors, which are stored in the index without their own name.
+     */
+
+    private static final List<String> CONSTRUCTOR_NAMES = List.of("super", "this");
+
+    private final Project project;
+    private volatile BloomFilter filter;
+    private final AtomicBoolean buildScheduled = new AtomicBoolean();
+
+    public SideNameFilter(@NotNull Project project) {
+        this.project = project;
+    }
+
+    /**
+     * Returns the filter of the given project.
+     *
+     * @param project the project to get the filter for
+     * @return the filter instance of the project
+     */
+
+    public static SideNameFilter getInstance(@NotNull Project project) {
+        return project.getService(SideNameFilter.class);
+    }
+
+    /**
+     * Returns the current state of the filter, to look up all names of a file in. If the filter is not built or
+     * out of date, a build is scheduled and the snapshot lets every name through.
+     *
+     * @return the snapshot of the filter
+     */
+
+    @NotNull
+    public Snapshot getSnapshot() {
+        if (DumbService.isDumb(project)) return Snapshot.ALL_NAMES;
+        BloomFilter current = filter;
+        if (current == null || current.stamp != getStamp()) {
+            scheduleBuild();
+            return Snapshot.ALL_NAMES;
+        }
+        return new Snapshot(current);
+    }
+
+    /**
+     * Records a change of a single declaration. The name of a changed method or field is added to the filter
+     * right away, since it may have become restricted, while a changed class may restrict everything it contains
+     * and all its inheritors, so the filter is built again.
+     *
+     * @param member the changed declaration
+     */
+
+    public void declarationChanged(@NotNull PsiMember member) {
+        BloomFilter current = filter;
+        if (current == null) return;
+
+        if (member instanceof PsiClass) filter = null;
+        else ContainerUtil.addIfNotNull(current.changedNames, member.getName());
+    }
+
+    /**
+     * Returns the stamp the filter is built for, which changes whenever the class hierarchy, the project roots or
+     * the side settings change. Changes confined to a single declaration don't change it,
+     * see {@link #declarationChanged(PsiMember)}.
+     *
+     * @return the current stamp
+     */
+
+    private long getStamp() {
+        return SideModificationTracker.getInstance(project).getHierarchyTracker().getModificationCount()
+                + ProjectRootManager.getInstance(project).getModificationCount();
+    }
+
+    /**
+     * Builds the filter in the background, so collecting the restricted names, which searches the inheritors of
+     * every restricted class, never runs on the highlighting thread. Requests made while a build is pending are
+     * ignored, and the build is restarted if a write action interrupts it.
+     */
+
+    private void scheduleBuild() {
+        if (!buildScheduled.compareAndSet(false, true)) return;
+        ReadAction.nonBlocking(this::buildFilter)
+                .inSmartMode(project)
+                .expireWith(project)
+                .coalesceBy(this)
+                .submit(AppExecutorUtil.getAppExecutorService())
+                .onProcessed(ignored -> buildScheduled.set(false));
+    }
+
+    private void buildFilter() {
+        long stamp = getStamp();
+        BloomFilter current = filter;
+        if (current != null && current.stamp == stamp) return;
+
+        Set<String> names = collectRestrictedNames();
+        BloomFilter newFilter = new BloomFilter(names.size(), FALSE_POSITIVE_RATE, stamp);
+        for (String name : names) newFilter.add(name);
+
+        // No write action can happen during this read action, so the new filter covers all changed names
+        filter = newFilter;
+    }
+
+    /**
+     * Collects the simple names of the annotated declarations and of everything that inherits their restriction:
+     * members and nested classes of restricted classes and all inheritors of restricted classes and interfaces.
+     * Annotated constructors are collected by the names of their classes too.
+     *
+     * @return the set of restricted simple names
+     */
+
+    @NotNull
+    Set<String> collectRestrictedNames() {
+        GlobalSearchScope scope = GlobalSearchScope.allScope(project);
+        List<String> keys = SideOnlyIndex.getAllKeys(scope);
+        Set<String> names = new HashSet<>(CONSTRUCTOR_NAMES);
+
+        for (String key : keys) {
+            int memberStart = key.indexOf('#');
+            if (memberStart < 0) names.add(StringUtil.getShortName(key));
+            else {
+                String member = StringUtil.trimEnd(key.substring(memberStart + 1), "()");
+                names.add(member.equals("<init>") ? StringUtil.getShortName(key.substring(0, memberStart)) : member);
+            }
+        }
+
+        for (PsiClass psiClass : SideOnlyIndex.collectRestrictedClasses(project, scope, keys)) {
+            ProgressManager.checkCanceled();
+            ContainerUtil.addIfNotNull(names, psiClass.getName());
+            for (PsiMethod method : psiClass.getMethods()) {
+                if (!method.isConstructor()) names.add(method.getName());
+            }
+            for (PsiField field : psiClass.getFields()) names.add(field.getName());
+        }
+        return names;
+    }
+
+    /**
+     * The state of the filter at the time a file is analysed.
+     */
+
+    public static final class Snapshot {
+        private static final Snapshot ALL_NAMES = new Snapshot(null);
+
+        private final BloomFilter filter;
+
+        private Snapshot(@Nullable BloomFilter filter) {
+            this.filter = filter;
+        }
+
+        /**
+         * Returns false if no class or member with the given simple name has a restricted side. A positive answer
+         * may be wrong with a probability of about {@link #FALSE_POSITIVE_RATE}, a negative answer is always right.
+         * While the filter is being built, every name may be restricted.
+         *
+         * @param name the simple name of the referenced element
+         * @return false if the name can't refer to a restricted element
+         */
+
+        public boolean mayBeRestricted(@NotNull String name) {
+            return filter == null || filter.mightContain(name) || filter.changedNames.contains(name);
+        }
+    }
+
+    /**
+     * A Bloom filter of strings using double hashing over the string hash code, together with the names of the
+     * methods and fields changed since it was built.
+     */
+
+    private static final class BloomFilter {
+        private final long[] bits;
+        private final int bitCount;
+        private final int hashCount;
+        private final long stamp;
+        private final Set<String> changedNames = ConcurrentHashMap.newKeySet();
+
+        private BloomFilter(int expectedSize, double falsePositiveRate, long stamp) {
+            this.stamp = stamp;
+            int size = Math.max(expectedSize, 1);
+            long optimalBits = (long) Math.ceil(-size * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+
+            this.bitCount = (int) Math.min(Math.max(optimalBits, Long.SIZE), Integer.MAX_VALUE - Long.SIZE);
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / size * Math.log(2)));
+            this.bits = new long[(bitCount + Long.SIZE - 1) / Long.SIZE];
+        }
+
+        private void add(String value) {
+            int hash = value.hashCode();
+            int secondHash = mix(hash);
+            for (int i = 0; i < hashCount; i++) {
+                int index = Math.floorMod(hash + i * secondHash, bitCount);
+                bits[index / Long.SIZE] |= 1L << index;
+            }
+        }
+
+        private boolean mightContain(String value) {
+            int hash = value.hashCode();
+            int secondHash = mix(hash);
+            for (int i = 0; i < hashCount; i++) {
+                int index = Math.floorMod(hash + i * secondHash, bitCount);
+                if ((bits[index / Long.SIZE] & (1L << index)) == 0) return false;
+            }
+            return true;
+        }
+
+        private static int mix(int hash) {
+            hash ^= hash >>> 16;
+            hash *= 0x85ebca6b;
+            hash ^= hash >>> 13;
+            return hash | 1;
+        }
+    }
+}
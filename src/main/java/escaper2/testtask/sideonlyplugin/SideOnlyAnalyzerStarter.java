@@ -0,0 +1,312 @@
+/**
+ * Runs the side analysis from the command line, so CI builds can fail on side violations without opening the IDE:
+ * <pre>
+ * idea sideonly &lt;project path&gt; [--format=jsonl|sarif] [--output=&lt;file&gt;] [--threads=&lt;count&gt;]
+ * </pre>
+ * The starter opens the project headlessly, waits for indexing to finish and analyses every Java file in the source
+ * roots of the project with {@link SideOnlyFileAnalysis} on a pool of worker threads. Violations are streamed to the
+ * output, standard output by default, as soon as they are found, see {@link SideViolationWriter}. The report ends
+ * with the number of analysed files, the wall time and the throughput in files per second, which are printed to
+ * standard error as well. Everything runs locally; nothing is sent over the network.
+ * A file that fails to be analysed is reported to standard error and skipped, so the report is always complete.
+ * The process exits with 0 if there are no violations, 1 if there are, and 2 if the analysis can't be run or some
+ * files couldn't be analysed. It exits through the application, so the indexes and caches are saved.
+ */
+
+package escaper2.testtask.sideonlyplugin;
+
+import com.intellij.ide.impl.ProjectUtil;
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.openapi.application.ApplicationStarter;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.application.ex.ApplicationEx;
+import com.intellij.openapi.application.ex.ApplicationManagerEx;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+
+public class SideOnlyAnalyzerStarter implements ApplicationStarter {
+
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_VIOLATIONS = 1;
+    private static final int EXIT_ERROR = 2;
+
+    @Override
+    public String getCommandName() {
+        return "sideonly";
+    }
+
+    @Override
+    public int getRequiredModality() {
+        return NOT_IN_EDT;
+    }
+
+    @Override
+    public void main(@NotNull List<String> args) {
+        int exitCode;
+        try {
+            exitCode = run(args.subList(1, args.size()));
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            exitCode = EXIT_ERROR;
+        }
+        ApplicationManagerEx.getApplicationEx().exit(ApplicationEx.FORCE_EXIT | ApplicationEx.EXIT_CONFIRMED, exitCode);
+    }
+
+    /**
+     * Parses the arguments, opens the project and analyses it.
+     *
+     * @param args the arguments after the command name
+     * @return the exit code of the process
+     * @throws Exception if the project can't be opened or the report can't be written
+     */
+
+    private static int run(List<String> args) throws Exception {
+        String projectPath = null;
+        String format = "jsonl";
+        String output = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        for (String arg : args) {
+            if (arg.startsWith("--format=")) format = StringUtil.substringAfter(arg, "=");
+            else if (arg.startsWith("--output=")) output = StringUtil.substringAfter(arg, "=");
+            else if (arg.startsWith("--threads=")) threads = Math.max(1, StringUtil.parseInt(StringUtil.substringAfter(arg, "="), threads));
+            else if (projectPath == null && !arg.startsWith("--")) projectPath = arg;
+            else return usage("Unknown argument: " + arg);
+        }
+        if (projectPath == null) return usage("No project path given");
+
+        Function<Writer, SideViolationWriter> writerFactory = SideViolationWriter.getFactory(format);
+        if (writerFactory == null) return usage("Unknown format: " + format);
+
+        Path path = Paths.get(projectPath).toAbsolutePath().normalize();
+        Project project = ProjectUtil.openOrImport(path.toString(), null, false);
+        if (project == null) {
+            System.err.println("Can't open project " + path);
+            return EXIT_ERROR;
+        }
+
+        try {
+            DumbService.getInstance(project).waitForSmartMode();
+            try (SideViolationWriter writer = writerFactory.apply(openOutput(output))) {
+                return new Analyzer(project, writer, threads).run();
+            }
+        }
+        finally {
+            ProjectManager.getInstance().closeAndDispose(project);
+        }
+    }
+
+    /**
+     * Opens the output of the report. It is only opened once the arguments are checked and the project is open,
+     * so no empty report is left behind if the analysis can't be run.
+     *
+     * @param output the path of the output file, or null for standard output
+     * @return the writer to write the report to
+     * @throws IOException if the output file can't be opened
+     */
+
+    private static Writer openOutput(@Nullable String output) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+                output == null ? System.out : Files.newOutputStream(Paths.get(output)), StandardCharsets.UTF_8));
+    }
+
+    private static int usage(String error) {
+        System.err.println(error);
+        System.err.println("Usage: sideonly <project path> [--format=jsonl|sarif] [--output=<file>] [--threads=<count>]");
+        return EXIT_ERROR;
+    }
+
+    /**
+     * Analyses the source files of a project on a pool of worker threads. Every file is analysed in a read action
+     * of its own, and its violations are written as soon as the file is done. Files outside the project directory
+     * are reported by their absolute URIs, all others relative to the project directory.
+     */
+
+    private static final class Analyzer {
+        private final Project project;
+        private final SideViolationWriter writer;
+        private final int threads;
+        private final String basePath;
+        private final AtomicInteger violations = new AtomicInteger();
+        private final AtomicInteger failedFiles = new AtomicInteger();
+
+        private Analyzer(Project project, SideViolationWriter writer, int threads) {
+            this.project = project;
+            this.writer = writer;
+            this.threads = threads;
+            this.basePath = project.getBasePath();
+        }
+
+        /**
+         * Analyses all source files of the project and writes the report. The report is finished even if the
+         * analysis is interrupted, so it is always a complete document.
+         *
+         * @return the exit code of the process
+         * @throws Exception if the analysis is interrupted or the report can't be written
+         */
+
+        private int run() throws Exception {
+            long start = System.nanoTime();
+            List<VirtualFile> files = ReadAction.compute(this::collectSourceFiles);
+            writer.start(basePath == null ? null : getBaseUri(basePath));
+
+            ExecutorService executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("SideOnly Analyzer", threads);
+            try {
+                List<Future<?>> futures = new ArrayList<>(files.size());
+                for (VirtualFile file : files) {
+                    futures.add(executor.submit(() -> analyzeSafely(file)));
+                }
+                for (Future<?> future : futures) future.get();
+            }
+            finally {
+                executor.shutdownNow();
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+
+                long wallTimeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                writer.finish(files.size(), failedFiles.get(), violations.get(), wallTimeMs);
+                System.err.printf("Analysed %d files in %d ms (%.1f files/sec), %d violations, %d failed files%n",
+                        files.size(), wallTimeMs, SideViolationWriter.getFilesPerSecond(files.size(), wallTimeMs),
+                        violations.get(), failedFiles.get());
+            }
+
+            if (failedFiles.get() > 0) return EXIT_ERROR;
+            return violations.get() == 0 ? EXIT_OK : EXIT_VIOLATIONS;
+        }
+
+        private List<VirtualFile> collectSourceFiles() {
+            List<VirtualFile> files = new ArrayList<>();
+            ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(project);
+            fileIndex.iterateContent(file -> {
+                if (!file.isDirectory() && file.getFileType() == JavaFileType.INSTANCE && fileIndex.isInSourceContent(file)) {
+                    files.add(file);
+                }
+                return true;
+            });
+            return files;
+        }
+
+        /**
+         * Analyses a single file, reporting a failure to standard error instead of failing the whole analysis.
+         * Only a cancellation stops the whole analysis.
+         *
+         * @param file the file to analyse
+         */
+
+        private void analyzeSafely(VirtualFile file) {
+            try {
+                analyze(file);
+            }
+            catch (ProcessCanceledException e) {
+                throw e;
+            }
+            catch (Exception e) {
+                failedFiles.incrementAndGet();
+                System.err.println("Can't analyse " + file.getPath());
+                e.printStackTrace();
+            }
+        }
+
+        /**
+         * Analyses a single file and writes its violations.
+         *
+         * @param file the file to analyse
+         * @throws IOException if the violations can't be written
+         */
+
+        private void analyze(VirtualFile file) throws IOException {
+            List<Violation> fileViolations = ReadAction.compute(() -> {
+                List<Violation> result = new ArrayList<>();
+                PsiFile psiFile = PsiManager.getInstance(project).findFile(file);
+                Document document = FileDocumentManager.getInstance().getDocument(file);
+                if (psiFile == null || document == null) return result;
+
+                for (PsiElement element : SideOnlyFileAnalysis.getInstance(psiFile).getProblemElements()) {
+                    int offset = element.getTextRange().getStartOffset();
+                    int line = document.getLineNumber(offset);
+                    result.add(new Violation(line + 1, offset - document.getLineStartOffset(line) + 1,
+                            element.getText(), SideOnlyInspectionTool.getProblemMessage(element)));
+                }
+                return result;
+            });
+
+            URI uri = getUri(file);
+            for (Violation violation : fileViolations) {
+                writer.violation(uri, violation.line, violation.column, violation.text, violation.message);
+            }
+            violations.addAndGet(fileViolations.size());
+        }
+
+        /**
+         * Returns the URI of a file, relative to the project directory if the file is inside it and absolute otherwise.
+         *
+         * @param file the file to get the URI of
+         * @return the URI of the file
+         */
+
+        private URI getUri(VirtualFile file) {
+            String relativePath = basePath == null ? null : FileUtil.getRelativePath(basePath, file.getPath(), '/');
+            if (relativePath != null && !relativePath.startsWith("../")) {
+                try {
+                    URI uri = new URI(null, null, relativePath, null);
+                    if (!uri.isAbsolute()) return uri;
+                }
+                catch (URISyntaxException ignored) {
+                }
+            }
+            return file.toNioPath().toUri();
+        }
+
+        private static URI getBaseUri(String basePath) {
+            String uri = Paths.get(basePath).toUri().toString();
+            return URI.create(uri.endsWith("/") ? uri : uri + "/");
+        }
+    }
+
+    private static final class Violation {
+        private final int line;
+        private final int column;
+        private final String text;
+        private final String message;
+
+        private Violation(int line, int column, String text, String message) {
+            this.line = line;
+            this.column = column;
+            this.text = text;
+            this.message = message;
+        }
+    }
+}
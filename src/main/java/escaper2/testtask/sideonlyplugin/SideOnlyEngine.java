@@ -0,0 +1,147 @@
+/**
+ * Computes the sides of code elements. The engine is a project service shared by the inspection, the inlay hints
+ * and everything else that needs sides, so all of them work with the same cached results and no per-element
+ * state has to be allocated. The hierarchy is resolved by the {@link SideResolver} of the core engine
+ * on the {@link PsiSideModel}.
+ */
+
+package escaper2.testtask.sideonlyplugin;
+
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.*;
+import escaper2.testtask.sideonlycore.Side;
+import escaper2.testtask.sideonlycore.SideResolver;
+import escaper2.testtask.sideonlycore.SideStore;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+
+@Service
+public final class SideOnlyEngine {
+
+    private final Project project;
+    private final SideResolver<PsiModifierListOwner> resolver = new SideResolver<>(PsiSideModel.INSTANCE);
+    private final SideStore<PsiModifierListOwner> store = new Store();
+
+    public SideOnlyEngine(@NotNull Project project) {
+        this.project = project;
+    }
+
+    /**
+     * Returns the engine of the given project.
+     *
+     * @param project the project to get the engine for
+     * @return the engine instance of the project
+     */
+
+    public static SideOnlyEngine getInstance(@NotNull Project project) {
+        return project.getService(SideOnlyEngine.class);
+    }
+
+    /**
+     * Resolves an element to its actual reference.
+     *
+     * @param element  The element to resolve.
+     * @return         The resolved element, or null if the element cannot be resolved.
+     */
+
+    public PsiElement getResolved(PsiElement element) {
+        if (element == null) return null;
+        PsiElement resolved;
+
+        if (element instanceof PsiReference) resolved = ((PsiReference) element).resolve();
+        else resolved = element;
+
+        return resolved;
+    }
+
+    /**
+     * Gets the side(s) that a PsiModifierListOwner is marked with. The result is cached per project
+     * until a declaration of the project changes, and on disk until the files it was computed from change.
+     *
+     * @param owner The PsiModifierListOwner to get the side(s) of.
+     * @return The side(s) that the owner is marked with.
+     */
+
+    public Side getSide(PsiModifierListOwner owner) {
+        if (owner == null) return Side.ALL;
+        return resolver.getSide(owner, store);
+    }
+
+    /**
+     * Gets the side(s) shown in the inlay hint of a method or class, based on its own side(s) and the side(s)
+     * of the method enclosing it.
+     *
+     * @param element          The method or class to get the hint side(s) of.
+     * @param containingMethod The method enclosing the element, or null if there is none.
+     * @return The side(s) to show in the hint, {@link Side#ALL} if no hint has to be shown.
+     */
+
+    public Side getHintSide(PsiModifierListOwner element, @Nullable PsiMethod containingMethod) {
+        return getHintSide(getSide(element), containingMethod, getSide(containingMethod));
+    }
+
+    /**
+     * Gets the side(s) shown in the inlay hint of a method or class only if all the sides it depends on are
+     * already cached, so the hint can be shown without walking any hierarchy.
+     *
+     * @param element          The method or class to get the hint side(s) of.
+     * @param containingMethod The method enclosing the element, or null if there is none.
+     * @return The side(s) to show in the hint, or null if they are not cached yet.
+     */
+
+    @Nullable
+    public Side getCachedHintSide(PsiModifierListOwner element, @Nullable PsiMethod containingMethod) {
+        SideCache cache = SideCache.getInstance(project);
+        Side elementSide = cache.get(element);
+        Side methodSide = containingMethod == null ? Side.ALL : cache.get(containingMethod);
+        if (elementSide == null || methodSide == null) return null;
+        return getHintSide(elementSide, containingMethod, methodSide);
+    }
+
+    private static Side getHintSide(Side elementSide, PsiMethod containingMethod, Side methodSide) {
+        if (containingMethod == null) return elementSide;
+        if (containingMethod.getContainingClass() instanceof PsiAnonymousClass && methodSide.isEmpty()) return Side.NONE;
+
+        elementSide = elementSide.intersect(methodSide);
+        if (!methodSide.isSubsetOf(elementSide)) return Side.NONE;
+        return elementSide;
+    }
+
+    /**
+     * The store of the computed sides: the sides are taken from the cache, from the table of their library jar if
+     * they are compiled, or from the persistent cache if they are still valid, and computed sides are put into
+     * the cache and the persistent cache. Sides from a jar table only change with the jar or the settings, which
+     * both flush the whole cache, so they are cached without parents and survive the invalidation of single
+     * declarations. Only the sides from the persistent cache are cached as restored.
+     */
+
+    private final class Store implements SideStore<PsiModifierListOwner> {
+        @Nullable
+        @Override
+        public Side get(@NotNull PsiModifierListOwner owner) {
+            SideCache cache = SideCache.getInstance(project);
+            Side side = cache.get(owner);
+            if (side != null) return side;
+
+            side = LibrarySideReader.getInstance().getSide(owner);
+            if (side != null) {
+                cache.put(owner, side, List.of());
+                return side;
+            }
+
+            side = SidePersistentCache.getInstance(project).get(owner);
+            if (side != null) cache.putRestored(owner, side);
+            return side;
+        }
+
+        @Override
+        public void put(@NotNull PsiModifierListOwner owner, @NotNull Side side, @NotNull List<PsiModifierListOwner> parents) {
+            SideCache.getInstance(project).put(owner, side, parents);
+            SidePersistentCache.getInstance(project).put(owner, side, parents);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/**
+ * The result of checking the sides of a single file: the references that are accessed from the wrong side
+ * and the sides shown in the inlay hints of the declarations of the file.
+ * The analysis resolves every reference of the file once and is cached until the next PSI modification,
+ * so the inspection and the inlay hints consume the same result instead of analysing the file twice.
+ */
+
+package escaper2.testtask.sideonlyplugin;
+
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.psi.*;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
+import com.intellij.psi.util.PsiTreeUtil;
+import escaper2.testtask.sideonlycore.Side;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+
+public final class SideOnlyFileAnalysis {
+
+    private static final Key<CachedValue<SideOnlyFileAnalysis>> KEY = Key.create("SideOnlyFileAnalysis");
+
+    /**
+     * The elements that are accessed from the wrong side, each of them only once.
+     */
+
+    private final Set<PsiElement> problemElements = new LinkedHashSet<>();
+
+    /**
+     * The sides of the methods and classes of the file, as they are shown in the inlay hints.
+     */
+
+    private final Map<PsiElement, Side> hintSides = new HashMap<>();
+
+    private SideOnlyFileAnalysis() {
+    }
+
+    /**
+     * Returns the analysis of the given file, computing it if the file or the side annotation settings were modified
+     * since the last analysis.
+     *
+     * @param file the file to get the analysis of
+     * @return the analysis of the file
+     */
+
+    @NotNull
+    public static SideOnlyFileAnalysis getInstance(@NotNull PsiFile file) {
+        return CachedValuesManager.getManager(file.getProject()).getCachedValue(file, KEY, () ->
+                CachedValueProvider.Result.create(analyze(file), PsiModificationTracker.MODIFICATION_COUNT, SideOnlySettings.getInstance()), false);
+    }
+
+    /**
+     * Returns the analysis of the given file if it is already computed and up to date, without computing it.
+     *
+     * @param file the file to get the analysis of
+     * @return the analysis of the file, or null if it would have to be computed
+     */
+
+    @Nullable
+    public static SideOnlyFileAnalysis getIfComputed(@NotNull PsiFile file) {
+        CachedValue<SideOnlyFileAnalysis> cachedValue = file.getUserData(KEY);
+        return cachedValue != null && cachedValue.hasUpToDateValue() ? cachedValue.getValue() : null;
+    }
+
+    /**
+     * Returns the elements that are accessed from the wrong side.
+     *
+     * @return the elements to report problems for
+     */
+
+    @NotNull
+    public Collection<PsiElement> getProblemElements() {
+        return problemElements;
+    }
+
+    /**
+     * Returns the side to show in the inlay hint of the given method or class.
+     *
+     * @param element the method or class of the analysed file
+     * @return the side of the element, or {@link Side#ALL} if no hint has to be shown
+     */
+
+    @NotNull
+    public Side getHintSide(@NotNull PsiElement element) {
+        return hintSides.getOrDefault(element, Side.ALL);
+    }
+
+    /**
+     * Analyses the given file. If no declaration visible from the file has a restricted side, nothing in the file
+     * can be accessed from the wrong side or needs a hint, so no reference is resolved.
+     *
+     * @param file the file to analyse
+     * @return the analysis of the file
+     */
+
+    private static SideOnlyFileAnalysis analyze(PsiFile file) {
+        SideOnlyFileAnalysis analysis = new SideOnlyFileAnalysis();
+        if (SideOnlyIndex.hasRestrictedDeclarations(file.getProject(), file.getResolveScope())) {
+            file.accept(analysis.new AnalysisVisitor(file.getProject()));
+        }
+        return analysis;
+    }
+
+    /**
+     * Walks a file and checks every reference in it. The visitor keeps a stack of the methods it is inside of,
+     * whose sides are computed once when a method is entered, so the side of the context doesn't have to be looked
+     * up again for every reference. Only methods change the context: lambdas, anonymous classes and initializers
+     * are checked against the side of the method that encloses them.
+     */
+
+    private class AnalysisVisitor extends JavaRecursiveElementWalkingVisitor {
+        private final SideOnlyEngine engine;
+        private final SideNameFilter.Snapshot nameFilter;
+
+        /**
+         * The enclosing methods, innermost first.
+         */
+
+        private final Deque<Context> contexts = new ArrayDeque<>();
+
+        private AnalysisVisitor(Project project) {
+            this.engine = SideOnlyEngine.getInstance(project);
+            this.nameFilter = SideNameFilter.getInstance(project).getSnapshot();
+        }
+
+        /**
+         * Computes the hint side of the class before visiting its members.
+         *
+         * @param aClass  The class to visit.
+         */
+
+        @Override
+        public void visitClass(PsiClass aClass) {
+            recordHintSide(aClass);
+            super.visitClass(aClass);
+        }
+
+        /**
+         * Computes the hint side of the method and makes the method the context of the references inside it
+         * while its body is visited.
+         *
+         * @param method  The method to visit.
+         */
+
+        @Override
+        public void visitMethod(PsiMethod method) {
+            recordHintSide(method);
+            contexts.push(new Context(method, engine.getSide(method)));
+            try {
+                super.visitMethod(method);
+            }
+            finally {
+                contexts.pop();
+            }
+        }
+
+        /**
+         * Checks if the referenced element is marked with the SideOnly annotation and if it is being accessed
+         * from the wrong side. This also covers the method expressions of method calls, which are visited as
+         * reference expressions themselves, so every reference is resolved and checked exactly once.
+         *
+         * @param expression  The reference expression to visit.
+         */
+
+        @Override
+        public void visitReferenceExpression(PsiReferenceExpression expression) {
+            ProgressManager.checkCanceled();
+            super.visitReferenceExpression(expression);
+            checkSideOnly(expression);
+        }
+
+        /**
+         * Checks if the class being instantiated is marked with the SideOnly annotation and if it is being accessed
+         * from the wrong side. Also checks if the constructor being called is marked with the SideOnly annotation
+         * and if it is being accessed from the wrong side.
+         *
+         * @param expression  The new expression to visit.
+         */
+
+        @Override
+        public void visitNewExpression(PsiNewExpression expression) {
+            super.visitNewExpression(expression);
+            PsiMethod constructor = expression.resolveConstructor();
+
+            if (constructor != null) checkSideForConstructor(expression.getClassReference(), constructor);
+            else checkSideOnly(expression.getClassReference());
+        }
+
+        /**
+         * Checks the given PsiElement for the "@SideOnly" annotation and compares its value to the context side.
+         * If the element's side is invalid for the current context, then the element is recorded as a problem:
+         * the element has to be available on every side the context is available on.
+         *
+         * @param element the PsiElement to check for the "@SideOnly" annotation
+         */
+
+        private void checkSideOnly(PsiElement element) {
+            Context context = contexts.peek();
+            if (element instanceof PsiJavaCodeReferenceElement && isNeverRestricted((PsiJavaCodeReferenceElement) element, context)) return;
+
+            var resolved = engine.getResolved(element);
+            if (resolved == null) return;
+
+            Side elementSide = engine.getSide((PsiModifierListOwner) resolved);
+
+            if (context != null) {
+                Side methodSide = context.side;
+
+                if (context.method.getContainingClass() instanceof PsiAnonymousClass && methodSide.isEmpty()) {
+                    PsiNewExpression newExpr = PsiTreeUtil.getParentOfType(context.method, PsiNewExpression.class);
+                    assert newExpr != null;
+                    problemElements.add(newExpr.getClassOrAnonymousClassReference());
+                }
+
+                elementSide = elementSide.intersect(methodSide);
+                if (!methodSide.isSubsetOf(elementSide)) problemElements.add(element);
+            }
+            if (elementSide.isEmpty()) problemElements.add(element);
+        }
+
+        /**
+         * Checks the given PsiElement for the "@SideOnly" annotation and compares its value against the side of the containing
+         * constructor. If the element's side is invalid for the current context, then the element is recorded as a problem.
+         *
+         * @param element the PsiElement to check for the "@SideOnly" annotation
+         * @param constructor the PsiMethod representing the constructor to compare against
+         */
+
+        private void checkSideForConstructor(PsiElement element, PsiMethod constructor) {
+            var resolved = engine.getResolved(element);
+            if (resolved == null) return;
+
+            Side elementSide = engine.getSide((PsiModifierListOwner) resolved);
+            Side constructorSide = engine.getSide(constructor);
+            Context context = contexts.peek();
+
+            if (context != null) {
+                Side methodSide = context.side;
+                elementSide = elementSide.intersect(methodSide).intersect(constructorSide);
+                if (!methodSide.isSubsetOf(elementSide)) problemElements.add(element);
+            }
+            else elementSide = elementSide.intersect(constructorSide);
+
+            if (elementSide.isEmpty()) problemElements.add(element);
+        }
+
+        /**
+         * Returns true if checking the given reference can't record a problem, so it doesn't have to be resolved.
+         * That is the case when no restricted element has the referenced name and the containing method is available
+         * on some side, because then the element side intersected with the method side is the method side itself.
+         *
+         * @param reference the reference to check
+         * @param context   the enclosing method, or null if the reference is outside of any method
+         * @return true if the reference doesn't have to be checked
+         */
+
+        private boolean isNeverRestricted(PsiJavaCodeReferenceElement reference, Context context) {
+            String name = reference.getReferenceName();
+            if (name == null || nameFilter.mayBeRestricted(name)) return false;
+            return context == null || !context.side.isEmpty();
+        }
+
+        /**
+         * Computes the side shown in the inlay hint of a method or class, based on its own side and the side of the
+         * enclosing method. Must be called before the method itself is pushed as the context.
+         *
+         * @param element the method or class to compute the hint side of
+         */
+
+        private void recordHintSide(PsiModifierListOwner element) {
+            Context context = contexts.peek();
+            Side side = engine.getHintSide(element, context == null ? null : context.method);
+            if (side != Side.ALL) hintSides.put(element, side);
+        }
+    }
+
+    /**
+     * A method enclosing the checked references together with its side.
+     */
+
+    private static class Context {
+        private final PsiMethod method;
+        private final Side side;
+
+        private Context(PsiMethod method, Side side) {
+            this.method = method;
+            this.side = side;
+        }
+    }
+}
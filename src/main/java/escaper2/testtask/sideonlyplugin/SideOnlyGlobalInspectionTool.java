@@ -0,0 +1,121 @@
+/**
+ * The batch counterpart of {@link SideOnlyInspectionTool}, used by "Inspect Code". Instead of resolving every
+ * reference of every file in the scope, it collects the simple names of everything that can be restricted once,
+ * see {@link SideNameFilter#collectRestrictedNames()}, looks up the Java files of the scope containing any of these
+ * names in the word index, and analyses each of those files once. A file without any of the names can't refer to
+ * a restricted declaration, so most files of a large project are never analysed at all. The editor highlighting
+ * keeps using the local tool, which is shared with this one.
+ */
+
+package escaper2.testtask.sideonlyplugin;
+
+import com.intellij.analysis.AnalysisScope;
+import com.intellij.codeInspection.*;
+import com.intellij.codeInspection.reference.RefEntity;
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.*;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.PsiSearchHelper;
+import com.intellij.psi.search.SearchScope;
+import com.intellij.psi.search.UsageSearchContext;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+
+public class SideOnlyGlobalInspectionTool extends GlobalInspectionTool {
+
+    @Override
+    public void runInspection(@NotNull AnalysisScope scope,
+                              @NotNull InspectionManager manager,
+                              @NotNull GlobalInspectionContext globalContext,
+                              @NotNull ProblemDescriptionsProcessor processor) {
+        Project project = manager.getProject();
+        GlobalSearchScope searchScope = ReadAction.compute(() -> getJavaScope(project, scope));
+        Set<String> names = ReadAction.compute(() -> SideNameFilter.getInstance(project).collectRestrictedNames());
+
+        Set<VirtualFile> files = new LinkedHashSet<>();
+        PsiSearchHelper searchHelper = PsiSearchHelper.getInstance(project);
+        for (String name : names) {
+            ReadAction.run(() -> {
+                ProgressManager.checkCanceled();
+                searchHelper.processCandidateFilesForText(searchScope, UsageSearchContext.IN_CODE, true, name, file -> {
+                    files.add(file);
+                    return true;
+                });
+            });
+        }
+
+        for (VirtualFile file : files) {
+            ReadAction.run(() -> {
+                ProgressManager.checkCanceled();
+                if (!file.isValid() || !scope.contains(file)) return;
+                PsiFile psiFile = PsiManager.getInstance(project).findFile(file);
+                if (psiFile instanceof PsiJavaFile) reportProblems(psiFile, manager, globalContext, processor);
+            });
+        }
+    }
+
+    /**
+     * Returns the Java files of the analysis scope, or of the project if the scope is not global. Files outside of
+     * the analysis scope are skipped when the files are analysed.
+     *
+     * @param project the project being inspected
+     * @param scope   the analysis scope
+     * @return the scope to look up the candidate files in
+     */
+
+    private static GlobalSearchScope getJavaScope(Project project, AnalysisScope scope) {
+        SearchScope searchScope = scope.toSearchScope();
+        GlobalSearchScope globalScope = searchScope instanceof GlobalSearchScope
+                ? (GlobalSearchScope) searchScope
+                : GlobalSearchScope.projectScope(project);
+        return GlobalSearchScope.getScopeRestrictedByFileTypes(globalScope, JavaFileType.INSTANCE);
+    }
+
+    /**
+     * Reports the problems of the {@link SideOnlyFileAnalysis} of the given file.
+     *
+     * @param file          the file to report the problems of
+     * @param manager       the manager to create the problem descriptors with
+     * @param globalContext the context of the running inspection
+     * @param processor     the processor to report the problems to
+     */
+
+    private static void reportProblems(PsiFile file,
+                                       InspectionManager manager,
+                                       GlobalInspectionContext globalContext,
+                                       ProblemDescriptionsProcessor processor) {
+        Collection<PsiElement> problemElements = SideOnlyFileAnalysis.getInstance(file).getProblemElements();
+        if (problemElements.isEmpty()) return;
+
+        RefEntity refFile = globalContext.getRefManager().getReference(file);
+        if (refFile == null) return;
+        for (PsiElement element : problemElements) {
+            processor.addProblemElement(refFile, manager.createProblemDescriptor(
+                    element, SideOnlyInspectionTool.getProblemMessage(element), false, null, ProblemHighlightType.GENERIC_ERROR));
+        }
+    }
+
+    @Override
+    public boolean isGraphNeeded() {
+        return false;
+    }
+
+    /**
+     * Returns the local tool that highlights the problems in the editor, one file at a time.
+     *
+     * @return the local counterpart of this tool
+     */
+
+    @Nullable
+    @Override
+    public LocalInspectionTool getSharedLocalInspectionTool() {
+        return new SideOnlyInspectionTool();
+    }
+}
@@ -1,32 +1,47 @@
 /**
  * Provides inlay hints for the SideOnly inspection tool in IntelliJ IDEA.
  * This class implements the InlayHintsProvider interface and overrides its methods.
- * It also contains helper methods to get the depth of an element, check if it has a SideOnly annotation,
- * and get the side for the hint.
+ * It also contains a helper method to get the depth of an element. The sides are taken from the
+ * {@link SideOnlyFileAnalysis} of the file, which is computed by the project wide {@link SideOnlyEngine}.
  */
 
 package escaper2.testtask.sideonlyplugin;
 
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
 import com.intellij.codeInsight.hints.*;
 import com.intellij.codeInsight.hints.presentation.InlayPresentation;
 import com.intellij.lang.Language;
 import com.intellij.lang.java.JavaLanguage;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.editor.BlockInlayPriority;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.ex.util.EditorUtil;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.*;
 import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import escaper2.testtask.sideonlycore.Side;
 import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.HashSet;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 public class SideOnlyHintProvider implements InlayHintsProvider<NoSettings> {
 
+    /**
+     * The hint labels of an editor, by side and number of indenting spaces.
+     */
+
+    private static final Key<Map<Side, Map<Integer, String>>> LABELS = Key.create("SideOnlyHintProvider.labels");
+
     /**
      * Returns the settings key for this provider.
      *
@@ -68,7 +83,12 @@ public class SideOnlyHintProvider implements InlayHintsProvider<NoSettings> {
 
     /**
      * Returns the collector for this provider and creates inlay hints for the specified PsiElement
-     * based on the SideOnly inspection tool.
+     * based on the {@link SideOnlyFileAnalysis} of the file, which is shared with the inspection.
+     * If the analysis is not computed yet, the sides of the elements in the visible part of the editor are
+     * computed right away, while the elements outside of it only get a hint if their sides are already cached.
+     * The sides of the remaining elements are computed in the background, after which the hints are updated.
+     * An edit only drops the cached sides of the changed declarations and of the elements depending on them,
+     * so after an edit only the hints of the affected members and their nested classes are recomputed.
      *
      * @param file     the PsiFile to collect hints for
      * @param editor   the Editor to display hints in
@@ -83,31 +103,110 @@ public class SideOnlyHintProvider implements InlayHintsProvider<NoSettings> {
                                                @NotNull Editor editor,
                                                @NotNull NoSettings settings,
                                                @NotNull InlayHintsSink __) {
+        SideOnlyFileAnalysis analysis = SideOnlyFileAnalysis.getIfComputed(file);
+        SideOnlyEngine engine = SideOnlyEngine.getInstance(file.getProject());
+        TextRange visibleRange = EditorUtil.calculateVisibleRange(editor);
+
         return new FactoryInlayHintsCollector(editor) {
+            private boolean warmUpScheduled;
+
             @Override
             public boolean collect(@NotNull PsiElement element, @NotNull Editor editor, @NotNull InlayHintsSink sink) {
                 if (!(element instanceof PsiMethod || element instanceof PsiClass )) return true;
                 if (((PsiTypeParameterListOwner) element).getContainingClass() instanceof PsiAnonymousClass) return true;
 
-                SideOnlyInspectionTool inspector = new SideOnlyInspectionTool();
-                if (hasAnnotation(element, inspector)) return true;
+                if (PsiSideModel.hasSideAnnotation((PsiModifierListOwner) element)) return true;
 
-                Set<String> sideForHint = getSideForHint(element, inspector);
+                Side sideForHint = getSideForHint((PsiModifierListOwner) element);
+                if (sideForHint == null) {
+                    if (!warmUpScheduled) scheduleWarmUp(file, editor);
+                    warmUpScheduled = true;
+                    return true;
+                }
 
-                if (!(sideForHint.size() == 2)) {
+                if (sideForHint != Side.ALL) {
                     int offsetCounter = getDepth(element);
                     int spacesCount = EditorUtil.getPlainSpaceWidth(editor) * offsetCounter;
-                    String spaces = new String(new char[spacesCount]).replace('\0', ' ');
                     int offset = element.getTextRange().getStartOffset();
 
-                    InlayPresentation hint = getFactory().text(spaces + "@SideOnly(" + sideForHint + ")");
+                    InlayPresentation hint = getPresentation(sideForHint, spacesCount);
                     sink.addBlockElement(offset, false, true,  BlockInlayPriority.ANNOTATIONS, hint);
                 }
                 return true;
             }
+
+            /**
+             * Returns the side to show in the hint of the given element. Outside of the visible range,
+             * only sides that are already known are returned.
+             *
+             * @param element the method or class to get the hint side of
+             * @return the side of the element, or null if it is not visible and not computed yet
+             */
+
+            private Side getSideForHint(PsiModifierListOwner element) {
+                if (analysis != null) return analysis.getHintSide(element);
+
+                PsiMethod containingMethod = PsiTreeUtil.getParentOfType(element, PsiMethod.class);
+                if (visibleRange.contains(element.getTextRange().getStartOffset())) return engine.getHintSide(element, containingMethod);
+                return engine.getCachedHintSide(element, containingMethod);
+            }
+
+            /**
+             * Returns the presentation of a hint with the given side and indent. There are only a few distinct
+             * sides and indents, so the labels are cached in the editor and reused by all hints and passes.
+             * The presentation itself is created for every hint, because each inlay registers its listeners on it.
+             *
+             * @param side        the side to show in the hint
+             * @param spacesCount the number of spaces to indent the hint with
+             * @return the presentation of the hint
+             */
+
+            private InlayPresentation getPresentation(Side side, int spacesCount) {
+                Map<Side, Map<Integer, String>> labels = editor.getUserData(LABELS);
+                if (labels == null) {
+                    labels = new ConcurrentHashMap<>();
+                    editor.putUserData(LABELS, labels);
+                }
+
+                String label = labels
+                        .computeIfAbsent(side, key -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(spacesCount, key -> " ".repeat(spacesCount) + "@SideOnly(" + side + ")");
+                return getFactory().text(label);
+            }
         };
     }
 
+    /**
+     * Computes the hint sides of all methods and classes of the file in a non-blocking background read action
+     * and then restarts the hints pass, so the hints that were skipped because their sides were not known yet
+     * appear. The computation is cancelled by any write action and restarted afterwards, and dropped when the
+     * editor is closed.
+     *
+     * @param file   the file to compute the hint sides for
+     * @param editor the editor the hints are shown in
+     */
+
+    private void scheduleWarmUp(PsiFile file, Editor editor) {
+        Project project = file.getProject();
+        SideOnlyEngine engine = SideOnlyEngine.getInstance(project);
+
+        ReadAction.nonBlocking(() -> {
+                    for (PsiModifierListOwner owner : PsiTreeUtil.<PsiModifierListOwner>findChildrenOfAnyType(file, PsiMethod.class, PsiClass.class)) {
+                        ProgressManager.checkCanceled();
+                        engine.getHintSide(owner, PsiTreeUtil.getParentOfType(owner, PsiMethod.class));
+                    }
+                })
+                .inSmartMode(project)
+                .withDocumentsCommitted(project)
+                .expireWhen(() -> editor.isDisposed() || !file.isValid())
+                .coalesceBy(SideOnlyHintProvider.class, editor)
+                .finishOnUiThread(ModalityState.NON_MODAL, ignored -> {
+                    InlayHintsPassFactory.Companion.forceHintsUpdateOnNextPass();
+                    DaemonCodeAnalyzer.getInstance(project).restart(file);
+                })
+                .submit(AppExecutorUtil.getAppExecutorService());
+    }
+
     /**
      * Returns the depth of the given element in the PSI tree.
      *
@@ -129,66 +228,6 @@ public class SideOnlyHintProvider implements InlayHintsProvider<NoSettings> {
         return depth;
     }
 
-    /**
-     * Returns true if the given element has a SideOnly annotation, false otherwise.
-     *
-     * @param element   the PsiElement to check for a SideOnly annotation
-     * @param inspector the SideOnlyInspectionTool to use for resolving the element
-     * @return true if the given element has a SideOnly annotation, false otherwise
-     */
-
-    private boolean hasAnnotation(PsiElement element, SideOnlyInspectionTool inspector) {
-        if (element == null) return false;
-
-        var resolved = inspector.getResolved(element);
-        if (resolved == null) return false;
-
-        var owner  = ((PsiModifierListOwner) element);
-
-        PsiAnnotation[] annotations = owner.getAnnotations();
-        for (PsiAnnotation annotation : annotations) {
-            PsiAnnotationMemberValue value = annotation.findAttributeValue("value");
-            if (value != null) return true;
-        }
-        return false;
-    }
-
-    /**
-     * Returns the side for the @SideOnly annotation for given PsiElement, based on its
-     * containing class and method.
-     *
-     * @param element the {@link PsiElement} for which to get the side(s)
-     * @param inspector the {@link SideOnlyInspectionTool} instance to use for inspection
-     * @return a {@link Set} of strings representing the side(s) for the {@code @SideOnly} annotation on the given element,
-     */
-
-    private Set<String> getSideForHint(PsiElement element, SideOnlyInspectionTool inspector) {
-        Set<String> emptySide = new HashSet<>();
-
-        var resolved = inspector.getResolved(element);
-        if (resolved == null) return emptySide;
-
-        Set<String> elementSide = inspector.getSide((PsiModifierListOwner) resolved);
-        PsiMethod containingMethod = PsiTreeUtil.getParentOfType(element, PsiMethod.class);
-
-        if (containingMethod != null) {
-            Set<String> methodSide = inspector.getSide(containingMethod);
-
-            if (containingMethod.getContainingClass() instanceof PsiAnonymousClass && methodSide.isEmpty()) {
-                PsiNewExpression newExpr = PsiTreeUtil.getParentOfType(inspector.getResolved(containingMethod), PsiNewExpression.class);
-                assert newExpr != null;
-                PsiJavaCodeReferenceElement ref = newExpr.getClassOrAnonymousClassReference();
-                return emptySide;
-            }
-
-            elementSide.retainAll(methodSide);
-            if (methodSide.size() > 1 && elementSide.size() == 1) return  emptySide;
-        }
-        if (elementSide.isEmpty()) return emptySide;
-
-        return elementSide;
-    }
-
     /**
      * Determines if a particular language is supported by the plugin.
      *
@@ -0,0 +1,503 @@
+/**
+ * File based index of the sides declared by annotations on classes, methods, constructors and fields.
+ * The index maps the key of each annotated declaration to the bitmask of its declared side, so the side of
+ * a declaration located in another file or in a library can be found without loading the AST of that file.
+ * Java sources are indexed through their PSI, compiled classes are read directly from the bytecode.
+ */
+
+package escaper2.testtask.sideonlyplugin;
+
+import com.intellij.ide.highlighter.JavaClassFileType;
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.*;
+import com.intellij.psi.impl.source.PsiFileImpl;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.searches.ClassInheritorsSearch;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiUtilCore;
+import com.intellij.util.indexing.*;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.KeyDescriptor;
+import escaper2.testtask.sideonlycore.SideAnnotation;
+import escaper2.testtask.sideonlycore.SideAnnotationTable;
+import escaper2.testtask.sideonlycore.Side;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.org.objectweb.asm.*;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+public class SideOnlyIndex extends FileBasedIndexExtension<String, Long> {
+
+    public static final ID<String, Long> NAME = ID.create("escaper2.testtask.sideonlyplugin.SideOnlyIndex");
+
+    /**
+     * The value stored for a key that belongs to several declarations with different sides, such as overloaded methods.
+     * With all {@link Side#MAX_SIDES} sides configured this is also the mask of the last side alone, which is then
+     * read from PSI as well. That costs some time but never gives a wrong side.
+     */
+
+    static final long AMBIGUOUS = Long.MIN_VALUE;
+
+    private static final DataExternalizer<Long> MASK_EXTERNALIZER = new DataExternalizer<>() {
+        @Override
+        public void save(@NotNull DataOutput out, Long value) throws IOException {
+            out.writeLong(value);
+        }
+
+        @Override
+        public Long read(@NotNull DataInput in) throws IOException {
+            return in.readLong();
+        }
+    };
+
+    /**
+     * The number of keys checked for an existing declaration before a scope is assumed to contain one.
+     */
+
+    private static final int CHECKED_KEYS_LIMIT = 100;
+
+    @NotNull
+    @Override
+    public ID<String, Long> getName() {
+        return NAME;
+    }
+
+    @NotNull
+    @Override
+    public DataIndexer<String, Long, FileContent> getIndexer() {
+        return inputData -> {
+            if (inputData.getFileType() == JavaClassFileType.INSTANCE) return indexClassFile(inputData.getContent());
+            return indexJavaFile(inputData.getPsiFile());
+        };
+    }
+
+    @NotNull
+    @Override
+    public KeyDescriptor<String> getKeyDescriptor() {
+        return EnumeratorStringDescriptor.INSTANCE;
+    }
+
+    @NotNull
+    @Override
+    public DataExternalizer<Long> getValueExternalizer() {
+        return MASK_EXTERNALIZER;
+    }
+
+    /**
+     * Returns the version of the index, which includes the configured side annotations, so the index is rebuilt
+     * if they were changed between IDE runs.
+     *
+     * @return the version of the index
+     */
+
+    @Override
+    public int getVersion() {
+        return 6 * 31 + SideOnlySettings.getInstance().getState().hashCode();
+    }
+
+    @NotNull
+    @Override
+    public FileBasedIndex.InputFilter getInputFilter() {
+        return new DefaultFileTypeSpecificInputFilter(JavaFileType.INSTANCE, JavaClassFileType.INSTANCE);
+    }
+
+    @Override
+    public boolean dependsOnFileContent() {
+        return true;
+    }
+
+    /**
+     * Returns the side declared by the annotations of the given element, taken from the index.
+     * The index is only used when reading the annotations from PSI would require loading the AST of
+     * another file, that is for compiled elements and for elements of files whose AST is not loaded.
+     *
+     * @param owner the element to get the declared side of
+     * @return the declared side, or null if it has to be read from PSI
+     */
+
+    @Nullable
+    public static Side getIndexedSide(@NotNull PsiModifierListOwner owner) {
+        PsiFile file = owner.getContainingFile();
+        boolean astLoaded = file instanceof PsiFileImpl && ((PsiFileImpl) file).getTreeElement() != null;
+        if (!(owner instanceof PsiCompiledElement) && astLoaded) return null;
+
+        String key = getKey(owner);
+        VirtualFile virtualFile = PsiUtilCore.getVirtualFile(owner);
+        if (key == null || virtualFile == null) return null;
+
+        Project project = owner.getProject();
+        if (DumbService.isDumb(project)) return null;
+
+        ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(project);
+        if (!fileIndex.isInContent(virtualFile) && !fileIndex.isInLibrary(virtualFile)) return null;
+
+        Long mask = FileBasedIndex.getInstance().getFileData(NAME, virtualFile, project).get(key);
+        if (mask == null) return Side.ALL;
+        if (mask == AMBIGUOUS) return null;
+        return Side.of(mask);
+    }
+
+    /**
+     * Returns true if any declaration in the given scope declares a restricted side. If there is none, every element
+     * of the scope is available on all sides and no reference in it has to be resolved. The result is cached per
+     * scope until a declaration of the project or the project roots change.
+     *
+     * @param project the project the scope belongs to
+     * @param scope   the scope to search, usually the resolve scope of a file
+     * @return false if no declaration in the scope has a restricted side, true otherwise
+     */
+
+    public static boolean hasRestrictedDeclarations(@NotNull Project project, @NotNull GlobalSearchScope scope) {
+        if (DumbService.isDumb(project)) return true;
+
+        Map<GlobalSearchScope, Boolean> cache = CachedValuesManager.getManager(project).getCachedValue(project, () -> CachedValueProvider.Result.create(
+                new ConcurrentHashMap<GlobalSearchScope, Boolean>(),
+                SideModificationTracker.getInstance(project),
+                ProjectRootManager.getInstance(project)));
+        return cache.computeIfAbsent(scope, key -> findRestrictedDeclaration(key));
+    }
+
+    /**
+     * Searches the index for a key that still belongs to a file in the given scope. The keys reported by the index
+     * may be outdated, so each of them is checked against the files containing it.
+     *
+     * @param scope the scope to search
+     * @return true if a restricted declaration was found or the search gave up, false otherwise
+     */
+
+    private static boolean findRestrictedDeclaration(@NotNull GlobalSearchScope scope) {
+        FileBasedIndex index = FileBasedIndex.getInstance();
+        List<String> keys = new ArrayList<>();
+        index.processAllKeys(NAME, key -> {
+            keys.add(key);
+            return keys.size() < CHECKED_KEYS_LIMIT;
+        }, scope, null);
+
+        for (String key : keys) {
+            if (!index.getContainingFiles(NAME, key, scope).isEmpty()) return true;
+        }
+        return keys.size() >= CHECKED_KEYS_LIMIT;
+    }
+
+    /**
+     * Returns all keys of the index in the given scope. The keys may be outdated, that is belong to declarations
+     * that are not annotated anymore.
+     *
+     * @param scope the scope to get the keys of
+     * @return the keys of the annotated declarations
+     */
+
+    @NotNull
+    public static List<String> getAllKeys(@NotNull GlobalSearchScope scope) {
+        List<String> keys = new ArrayList<>();
+        FileBasedIndex.getInstance().processAllKeys(NAME, keys::add, scope, null);
+        return keys;
+    }
+
+    /**
+     * Collects the classes whose side may be restricted: the annotated classes among the given keys and everything
+     * that inherits their restriction, that is their nested classes and inheritors, transitively.
+     *
+     * @param project the project to search
+     * @param scope   the scope to search
+     * @param keys    the keys of the index, see {@link #getAllKeys(GlobalSearchScope)}
+     * @return the restricted classes
+     */
+
+    @NotNull
+    public static Set<PsiClass> collectRestrictedClasses(@NotNull Project project, @NotNull GlobalSearchScope scope, @NotNull List<String> keys) {
+        Deque<PsiClass> restrictedClasses = new ArrayDeque<>();
+        JavaPsiFacade facade = JavaPsiFacade.getInstance(project);
+        for (String key : keys) {
+            ProgressManager.checkCanceled();
+            if (key.indexOf('#') < 0) Collections.addAll(restrictedClasses, facade.findClasses(key, scope));
+        }
+
+        Set<PsiClass> visited = new LinkedHashSet<>();
+        while (!restrictedClasses.isEmpty()) {
+            PsiClass psiClass = restrictedClasses.poll();
+            if (!visited.add(psiClass)) continue;
+            ProgressManager.checkCanceled();
+
+            Collections.addAll(restrictedClasses, psiClass.getInnerClasses());
+            restrictedClasses.addAll(ClassInheritorsSearch.search(psiClass, scope, false).findAll());
+        }
+        return visited;
+    }
+
+    /**
+     * Returns the key under which the given declaration is stored in the index. The key of a class is its qualified
+     * name, members are keyed by the qualified name of their class and their name, so all overloads of a method
+     * share the same key.
+     *
+     * @param owner the declaration to get the key of
+     * @return the key of the declaration, or null for local and anonymous classes and their members
+     */
+
+    @Nullable
+    public static String getKey(@NotNull PsiModifierListOwner owner) {
+        if (owner instanceof PsiClass) return ((PsiClass) owner).getQualifiedName();
+
+        if (owner instanceof PsiMethod) {
+            PsiMethod method = (PsiMethod) owner;
+            return getMemberKey(method.getContainingClass(), method.isConstructor() ? "<init>()" : method.getName() + "()");
+        }
+
+        if (owner instanceof PsiField) {
+            PsiField field = (PsiField) owner;
+            return getMemberKey(field.getContainingClass(), field.getName());
+        }
+        return null;
+    }
+
+    /**
+     * Returns the key of a member of the given class.
+     *
+     * @param containingClass the class containing the member
+     * @param name            the name of the member, followed by "()" for methods
+     * @return the key of the member, or null if the class has no qualified name
+     */
+
+    @Nullable
+    private static String getMemberKey(@Nullable PsiClass containingClass, @NotNull String name) {
+        if (containingClass == null) return null;
+        String className = containingClass.getQualifiedName();
+        return className == null ? null : className + "#" + name;
+    }
+
+    /**
+     * Collects the declared sides of all classes and members of a Java source file.
+     *
+     * @param psiFile the PSI of the indexed file
+     * @return the map from declaration keys to the bitmasks of their declared sides
+     */
+
+    private static Map<String, Long> indexJavaFile(PsiFile psiFile) {
+        if (!(psiFile instanceof PsiJavaFile)) return Collections.emptyMap();
+        Map<String, Long> sides = new HashMap<>();
+
+        psiFile.accept(new JavaRecursiveElementWalkingVisitor() {
+            @Override
+            public void visitClass(PsiClass aClass) {
+                record(aClass);
+                super.visitClass(aClass);
+            }
+
+            @Override
+            public void visitMethod(PsiMethod method) {
+                record(method);
+            }
+
+            @Override
+            public void visitField(PsiField field) {
+                record(field);
+            }
+
+            private void record(PsiModifierListOwner owner) {
+                String key = getKey(owner);
+                if (key != null) merge(sides, key, getDeclaredMask(owner));
+            }
+        });
+        return withoutUnrestricted(sides);
+    }
+
+    /**
+     * Returns the side bits declared by the annotations of a source declaration. The references in the annotation
+     * values can't be resolved while indexing, so a name that is not a configured constant of its annotation, such
+     * as a constant field aliasing an enum constant, makes the declaration ambiguous, and its side is read from PSI.
+     *
+     * @param owner the declaration to get the side bits of
+     * @return the declared side bits, or {@link #AMBIGUOUS} if they can only be determined by resolving
+     */
+
+    private static long getDeclaredMask(PsiModifierListOwner owner) {
+        SideAnnotationTable table = SideOnlySettings.getInstance().getTable();
+        List<SideAnnotation> annotations = PsiSideModel.INSTANCE.getAnnotations(owner);
+        for (SideAnnotation annotation : annotations) {
+            SideAnnotationTable.Mapping mapping = table.getMapping(annotation.getQualifiedName());
+            if (mapping != null && !mapping.hasConstants(annotation.getConstants())) return AMBIGUOUS;
+        }
+        return table.getSide(annotations).getMask();
+    }
+
+    /**
+     * Collects the declared sides of a compiled class and its members from the bytecode.
+     *
+     * @param bytes the content of the class file
+     * @return the map from declaration keys to the bitmasks of their declared sides
+     */
+
+    private static Map<String, Long> indexClassFile(byte[] bytes) {
+        Map<String, Long> sides = new HashMap<>();
+
+        try {
+            new ClassReader(bytes).accept(createDeclarationsVisitor(sides), ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        }
+        catch (RuntimeException e) {
+            return Collections.emptyMap();
+        }
+        return withoutUnrestricted(sides);
+    }
+
+    /**
+     * Creates a visitor that collects the declared sides of a compiled class and its members, keyed like the index.
+     * Declarations available on all sides are collected too, with the mask of {@link Side#ALL}.
+     *
+     * @param sides the map to store the bitmasks of the declared sides in
+     * @return the class visitor
+     */
+
+    static ClassVisitor createDeclarationsVisitor(Map<String, Long> sides) {
+        return new ClassVisitor(Opcodes.ASM9) {
+            private String className;
+            private DeclarationVisitor classDeclaration;
+
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                className = name.replace('/', '.').replace('$', '.');
+                classDeclaration = new DeclarationVisitor(className);
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                return classDeclaration.visitAnnotation(descriptor);
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                if ((access & (Opcodes.ACC_SYNTHETIC | Opcodes.ACC_BRIDGE)) != 0 || name.equals("<clinit>")) return null;
+                DeclarationVisitor declaration = new DeclarationVisitor(className + "#" + name + "()");
+
+                return new MethodVisitor(Opcodes.ASM9) {
+                    @Override
+                    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                        return declaration.visitAnnotation(descriptor);
+                    }
+
+                    @Override
+                    public void visitEnd() {
+                        merge(sides, declaration.key, declaration.mask);
+                    }
+                };
+            }
+
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                if ((access & Opcodes.ACC_SYNTHETIC) != 0) return null;
+                DeclarationVisitor declaration = new DeclarationVisitor(className + "#" + name);
+
+                return new FieldVisitor(Opcodes.ASM9) {
+                    @Override
+                    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                        return declaration.visitAnnotation(descriptor);
+                    }
+
+                    @Override
+                    public void visitEnd() {
+                        merge(sides, declaration.key, declaration.mask);
+                    }
+                };
+            }
+
+            @Override
+            public void visitEnd() {
+                merge(sides, classDeclaration.key, classDeclaration.mask);
+            }
+        };
+    }
+
+    /**
+     * Stores the declared side of a declaration, marking the key as ambiguous if another declaration
+     * with the same key has a different side.
+     *
+     * @param sides the map of the declared sides of the file
+     * @param key   the key of the declaration
+     * @param mask  the bitmask of the declared side
+     */
+
+    static void merge(Map<String, Long> sides, String key, long mask) {
+        Long previous = sides.put(key, mask);
+        if (previous != null && previous != mask) sides.put(key, AMBIGUOUS);
+    }
+
+    /**
+     * Removes the declarations that are available on all sides, which are not stored in the index.
+     *
+     * @param sides the map of the declared sides of the file
+     * @return the same map without the unrestricted declarations
+     */
+
+    private static Map<String, Long> withoutUnrestricted(Map<String, Long> sides) {
+        sides.values().removeIf(mask -> mask != AMBIGUOUS && Side.of(mask) == Side.ALL);
+        return sides;
+    }
+
+    /**
+     * Collects the side declared by the annotations of a single compiled declaration. Like for sources, every
+     * side annotation with a value restricts the declaration to the sides named by the enum constants of that value.
+     * Other annotations are skipped without visiting their values.
+     */
+
+    private static class DeclarationVisitor {
+        private final String key;
+        private long mask = Side.ALL.getMask();
+
+        private DeclarationVisitor(String key) {
+            this.key = key;
+        }
+
+        private AnnotationVisitor visitAnnotation(String descriptor) {
+            SideAnnotationTable.Mapping mapping = SideAnnotations.getMapping(Type.getType(descriptor).getClassName().replace('$', '.'));
+            if (mapping == null) return null;
+
+            return new AnnotationVisitor(Opcodes.ASM9) {
+                private boolean hasValue;
+                private long valueMask;
+
+                @Override
+                public void visit(String name, Object value) {
+                    if ("value".equals(name)) hasValue = true;
+                }
+
+                @Override
+                public void visitEnum(String name, String descriptor, String value) {
+                    if (!"value".equals(name)) return;
+                    hasValue = true;
+                    valueMask |= mapping.getMask(value);
+                }
+
+                @Override
+                public AnnotationVisitor visitArray(String name) {
+                    if (!"value".equals(name)) return null;
+                    hasValue = true;
+
+                    return new AnnotationVisitor(Opcodes.ASM9) {
+                        @Override
+                        public void visitEnum(String name, String descriptor, String value) {
+                            valueMask |= mapping.getMask(value);
+                        }
+                    };
+                }
+
+                @Override
+                public void visitEnd() {
+                    if (hasValue) mask &= valueMask;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * Application level settings that map side annotations and their enum constants to sides.
+ * Each mapping names an annotation by its qualified name and lists which of its enum constants stand for which
+ * side, so the Forge {@code @OnlyIn(Dist.CLIENT)}, the Fabric {@code @Environment(EnvType.CLIENT)} and the legacy
+ * {@code @SideOnly(Side.CLIENT)} annotations are all checked by the same inspection. The mappings are stored in
+ * {@code sideOnly.xml} and precomputed into a {@link SideAnnotationTable} keyed by the short name of the annotation,
+ * which {@link SideAnnotations} looks annotations up in. The settings also define the names of the sides themselves,
+ * so builds can be split into more variants than a client and a server.
+ */
+
+package escaper2.testtask.sideonlyplugin;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.util.ModificationTracker;
+import com.intellij.openapi.util.SimpleModificationTracker;
+import com.intellij.util.indexing.FileBasedIndex;
+import escaper2.testtask.sideonlycore.Side;
+import escaper2.testtask.sideonlycore.SideAnnotationTable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+
+@Service
+@State(name = "SideOnlySettings", storages = @Storage("sideOnly.xml"))
+public final class SideOnlySettings implements PersistentStateComponent<SideOnlySettings.State>, ModificationTracker {
+
+    private final SimpleModificationTracker tracker = new SimpleModificationTracker();
+    private State state = new State();
+    private boolean loaded;
+    private volatile SideAnnotationTable table;
+
+    /**
+     * Returns the settings of the application.
+     *
+     * @return the settings instance
+     */
+
+    public static SideOnlySettings getInstance() {
+        return ApplicationManager.getApplication().getService(SideOnlySettings.class);
+    }
+
+    @NotNull
+    @Override
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Replaces the mappings and drops everything computed from the previous ones. If the mappings change after
+     * they were first loaded, the index, which stores the sides declared with the previous mappings, is rebuilt.
+     * Changes between IDE runs are covered by the index version, see {@link SideOnlyIndex#getVersion()}.
+     *
+     * @param state the new mappings
+     */
+
+    @Override
+    public void loadState(@NotNull State state) {
+        boolean changed = loaded && !state.equals(this.state);
+        this.state = state;
+        this.table = null;
+        Side.setNames(state.sides);
+        this.loaded = true;
+        tracker.incModificationCount();
+        if (changed) FileBasedIndex.getInstance().requestRebuild(SideOnlyIndex.NAME);
+    }
+
+    @Override
+    public long getModificationCount() {
+        return tracker.getModificationCount();
+    }
+
+    /**
+     * Returns the mappings of the annotations with the given short name, usually a single one.
+     *
+     * @param shortName the short name of an annotation
+     * @return the mappings of the annotations with this short name, or an empty list if there are none
+     */
+
+    @NotNull
+    public List<SideAnnotationTable.Mapping> getMappings(@NotNull String shortName) {
+        return getTable().getMappings(shortName);
+    }
+
+    /**
+     * Returns the mapping of the annotation with the given qualified name.
+     *
+     * @param qualifiedName the qualified name of an annotation, with nested classes separated by dots
+     * @return the mapping of the annotation, or null if it doesn't declare sides
+     */
+
+    @Nullable
+    public SideAnnotationTable.Mapping getMapping(@NotNull String qualifiedName) {
+        return getTable().getMapping(qualifiedName);
+    }
+
+    /**
+     * Returns the table of the current mappings, built when it is first needed after the mappings were loaded.
+     *
+     * @return the annotation table
+     */
+
+    @NotNull
+    public SideAnnotationTable getTable() {
+        SideAnnotationTable result = table;
+        if (result == null) table = result = buildTable(state);
+        return result;
+    }
+
+    private static SideAnnotationTable buildTable(State state) {
+        Map<String, Map<String, String>> annotations = new LinkedHashMap<>();
+        for (Annotation annotation : state.annotations) {
+            if (annotation.qualifiedName != null) annotations.putIfAbsent(annotation.qualifiedName, annotation.constants);
+        }
+        return new SideAnnotationTable(annotations);
+    }
+
+    /**
+     * The persisted settings: the names of the sides and the list of side annotations.
+     */
+
+    public static class State {
+        public List<String> sides = new ArrayList<>(List.of("CLIENT", "SERVER"));
+
+        public List<Annotation> annotations = new ArrayList<>(List.of(
+                new Annotation("cpw.mods.fml.relauncher.SideOnly", Map.of("CLIENT", "CLIENT", "SERVER", "SERVER")),
+                new Annotation("net.minecraftforge.fml.relauncher.SideOnly", Map.of("CLIENT", "CLIENT", "SERVER", "SERVER")),
+                new Annotation("net.minecraftforge.api.distmarker.OnlyIn", Map.of("CLIENT", "CLIENT", "DEDICATED_SERVER", "SERVER")),
+                new Annotation("net.fabricmc.api.Environment", Map.of("CLIENT", "CLIENT", "SERVER", "SERVER")),
+                new Annotation("SideOnly", Map.of("CLIENT", "CLIENT", "SERVER", "SERVER"))));
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof State && sides.equals(((State) o).sides) && annotations.equals(((State) o).annotations);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sides, annotations);
+        }
+    }
+
+    /**
+     * A persisted side annotation: its qualified name and the side each of its enum constants stands for.
+     */
+
+    public static class Annotation {
+        public String qualifiedName;
+        public Map<String, String> constants = new LinkedHashMap<>();
+
+        public Annotation() {
+        }
+
+        public Annotation(String qualifiedName, Map<String, String> constants) {
+            this.qualifiedName = qualifiedName;
+            this.constants.putAll(new TreeMap<>(constants));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Annotation)) return false;
+            Annotation other = (Annotation) o;
+            return Objects.equals(qualifiedName, other.qualifiedName) && constants.equals(other.constants);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(qualifiedName, constants);
+        }
+    }
+}
@@ -0,0 +1,463 @@
+/**
+ * Project level on-disk cache of computed sides, which survives IDE restarts.
+ * Every computed side of a class or member is stored in a persistent map in the system directory of the IDE,
+ * together with the files it was computed from: the file declaring the element and the files of all its parents,
+ * transitively, each with its stamp. After a restart, a side is taken from disk instead of walking the class
+ * hierarchy if none of these files has changed since it was stored and the project roots and side settings are
+ * the same, so validating an entry never resolves anything. Entries are collected in memory and written to disk
+ * in batches on a background thread, so computing sides never waits for the disk.
+ * The map starts over whenever its format or the side settings change.
+ */
+
+package escaper2.testtask.sideonlyplugin;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.OrderEnumerator;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.JarFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.psi.*;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiUtilCore;
+import com.intellij.psi.util.TypeConversionUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.IOUtil;
+import com.intellij.util.io.PersistentHashMap;
+import escaper2.testtask.sideonlycore.Side;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+@Service
+public final class SidePersistentCache implements Disposable {
+
+    private static final Logger LOG = Logger.getInstance(SidePersistentCache.class);
+
+    /**
+     * The version of the stored format, to be incremented whenever the entries or the keys change.
+     */
+
+    private static final int FORMAT_VERSION = 3;
+
+    /**
+     * How long computed entries are collected before they are written to disk together.
+     */
+
+    private static final long FLUSH_DELAY_MS = 5000;
+
+    private final Project project;
+
+    /**
+     * The entries computed in this session that are not written to disk yet.
+     */
+
+    private final Map<String, Entry> pending = new ConcurrentHashMap<>();
+
+    /**
+     * The entries read or computed in this session, kept as long as memory allows, so the entries of the parents
+     * don't have to be read from disk again when the side of an element is stored.
+     */
+
+    private final Map<String, Entry> recent = ContainerUtil.createConcurrentSoftValueMap();
+
+    /**
+     * The files of the entries by their URLs, so they are only looked up once.
+     */
+
+    private final Map<String, VirtualFile> files = ContainerUtil.createConcurrentWeakValueMap();
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private PersistentHashMap<String, Entry> map;
+    private int mapVersion;
+    private boolean broken;
+    private boolean disposed;
+
+    public SidePersistentCache(@NotNull Project project) {
+        this.project = project;
+    }
+
+    /**
+     * Returns the persistent cache of the given project.
+     *
+     * @param project the project to get the cache for
+     * @return the cache instance of the project
+     */
+
+    public static SidePersistentCache getInstance(@NotNull Project project) {
+        return project.getService(SidePersistentCache.class);
+    }
+
+    /**
+     * Returns the stored side of the given element if it is still valid.
+     *
+     * @param owner the element to get the side of
+     * @return the stored side, or null if there is none or it may be outdated
+     */
+
+    @Nullable
+    public Side get(@NotNull PsiModifierListOwner owner) {
+        if (DumbService.isDumb(project)) return null;
+        String key = getPersistentKey(owner);
+        VirtualFile file = PsiUtilCore.getVirtualFile(owner);
+        if (key == null || file == null) return null;
+
+        Entry entry = getEntry(key);
+        if (entry == null || !entry.urls[0].equals(file.getUrl()) || !isValid(entry)) return null;
+        return Side.of(entry.mask);
+    }
+
+    /**
+     * Stores the computed side of the given element. The entry is written to disk later, together with the other
+     * entries computed in the meantime. Elements whose parents can't be stored themselves, such as anonymous
+     * classes and their members, are not stored, and neither are elements of files with unsaved changes or
+     * elements whose parents have no valid entry, unless their sides are taken from the table of their jar.
+     *
+     * @param owner   the element whose side was computed
+     * @param side    the side of the element
+     * @param parents the parent elements the side was computed from
+     */
+
+    public void put(@NotNull PsiModifierListOwner owner, @NotNull Side side, @NotNull Collection<PsiModifierListOwner> parents) {
+        if (DumbService.isDumb(project)) return;
+        String key = getPersistentKey(owner);
+        VirtualFile file = PsiUtilCore.getVirtualFile(owner);
+        if (key == null || file == null || FileDocumentManager.getInstance().isFileModified(file)) return;
+
+        Map<String, Long> dependencies = new LinkedHashMap<>();
+        dependencies.put(file.getUrl(), getStamp(file));
+        for (PsiModifierListOwner parent : parents) {
+            if (!addDependencies(parent, dependencies)) return;
+        }
+
+        Entry entry = new Entry(side.getMask(), getConfigurationStamp(), dependencies);
+        recent.put(key, entry);
+        pending.put(key, entry);
+        scheduleFlush();
+    }
+
+    /**
+     * Adds the files the side of a parent was computed from to the files of its child. The entry of the parent
+     * has to be valid, so the child is not stored if any of these files has unsaved changes. A parent whose side
+     * is taken from the table of its jar, see {@link LibrarySideReader}, only depends on the jar.
+     *
+     * @param parent       the parent element
+     * @param dependencies the stamps of the files of the child by their URLs
+     * @return false if the files the side of the parent depends on are not known
+     */
+
+    private boolean addDependencies(PsiModifierListOwner parent, Map<String, Long> dependencies) {
+        String parentKey = getPersistentKey(parent);
+        Entry entry = parentKey == null ? null : getEntry(parentKey);
+        if (entry != null && isValid(entry)) {
+            for (int i = 0; i < entry.urls.length; i++) dependencies.putIfAbsent(entry.urls[i], entry.stamps[i]);
+            return true;
+        }
+
+        VirtualFile file = PsiUtilCore.getVirtualFile(parent);
+        if (file == null || LibrarySideReader.getInstance().getSide(parent) == null) return false;
+        dependencies.putIfAbsent(file.getUrl(), getStamp(file));
+        return true;
+    }
+
+    @Nullable
+    private Entry getEntry(String key) {
+        Entry entry = pending.get(key);
+        if (entry == null) entry = recent.get(key);
+        if (entry == null) {
+            entry = read(key);
+            if (entry != null) recent.put(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Returns true if the entry was stored for the current project roots and side settings and none of the files
+     * it was computed from has changed since.
+     *
+     * @param entry the entry to validate
+     * @return true if the stored side is still valid
+     */
+
+    private boolean isValid(Entry entry) {
+        if (entry.configurationStamp != getConfigurationStamp()) return false;
+        FileDocumentManager documentManager = FileDocumentManager.getInstance();
+        for (int i = 0; i < entry.urls.length; i++) {
+            VirtualFile file = findFile(entry.urls[i]);
+            if (file == null || getStamp(file) != entry.stamps[i] || documentManager.isFileModified(file)) return false;
+        }
+        return true;
+    }
+
+    @Nullable
+    private VirtualFile findFile(String url) {
+        VirtualFile file = files.get(url);
+        if (file != null && file.isValid()) return file;
+
+        file = VirtualFileManager.getInstance().findFileByUrl(url);
+        if (file != null) files.put(url, file);
+        return file;
+    }
+
+    /**
+     * Returns a stamp that changes whenever the given file is changed on disk. For classes in a jar,
+     * the jar itself is taken into account as well.
+     *
+     * @param file the file to get the stamp of
+     * @return the stamp of the file
+     */
+
+    private static long getStamp(VirtualFile file) {
+        long stamp = file.getTimeStamp() * 31 + file.getLength();
+        VirtualFile jar = JarFileSystem.getInstance().getVirtualFileForJar(file);
+        if (jar != null) stamp = (stamp * 31 + jar.getTimeStamp()) * 31 + jar.getLength();
+        return stamp;
+    }
+
+    /**
+     * Returns a stamp of the modules, the roots in their order and the side settings, computed once per change of
+     * the project roots. Parents resolve to other classes when the roots change, for example after a library was
+     * replaced by another version while the old jar is still on disk, so entries stored for other roots are invalid.
+     *
+     * @return the stamp of the configuration the sides are computed for
+     */
+
+    private long getConfigurationStamp() {
+        long rootsStamp = CachedValuesManager.getManager(project).getCachedValue(project, () -> CachedValueProvider.Result.create(
+                computeRootsStamp(),
+                ProjectRootManager.getInstance(project)));
+        return rootsStamp * 31 + SideOnlySettings.getInstance().getState().hashCode();
+    }
+
+    private long computeRootsStamp() {
+        long stamp = 0;
+        for (Module module : ModuleManager.getInstance(project).getModules()) stamp = stamp * 31 + module.getName().hashCode();
+
+        OrderEnumerator entries = ProjectRootManager.getInstance(project).orderEntries();
+        for (String url : entries.classes().getUrls()) stamp = stamp * 31 + url.hashCode();
+        for (String url : entries.sources().getUrls()) stamp = stamp * 31 + url.hashCode();
+        return stamp;
+    }
+
+    /**
+     * Returns the key of the given element in the persistent map. Unlike the index keys, methods are keyed
+     * by their erased parameter types too, so overloads with different sides don't overwrite each other, and
+     * every key is prefixed with the module or library the element belongs to, so classes with the same
+     * qualified name in different modules, source sets or libraries don't overwrite each other either.
+     *
+     * @param owner the element to get the key of
+     * @return the key of the element, or null for local and anonymous classes and their members
+     */
+
+    @Nullable
+    private String getPersistentKey(PsiModifierListOwner owner) {
+        String key = SideOnlyIndex.getKey(owner);
+        VirtualFile file = PsiUtilCore.getVirtualFile(owner);
+        String scope = file == null ? null : getScope(file);
+        if (key == null || scope == null) return null;
+        if (!(owner instanceof PsiMethod)) return scope + '|' + key;
+
+        StringJoiner parameters = new StringJoiner(",", "(", ")");
+        for (PsiParameter parameter : ((PsiMethod) owner).getParameterList().getParameters()) {
+            parameters.add(TypeConversionUtil.erasure(parameter.getType()).getCanonicalText());
+        }
+        return scope + '|' + StringUtil.trimEnd(key, "()") + parameters;
+    }
+
+    /**
+     * Returns the name of the module and source set of a source file, or the URL of the library root of a compiled
+     * or library file.
+     *
+     * @param file the file to get the scope of
+     * @return the scope of the file, or null if it belongs to neither a module nor a library
+     */
+
+    @Nullable
+    private String getScope(VirtualFile file) {
+        ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(project);
+        Module module = fileIndex.isInContent(file) ? fileIndex.getModuleForFile(file) : null;
+        if (module != null) return module.getName() + (fileIndex.isInTestSourceContent(file) ? ":test" : ":main");
+
+        VirtualFile root = fileIndex.getClassRootForFile(file);
+        if (root == null) root = fileIndex.getSourceRootForFile(file);
+        return root == null ? null : root.getUrl();
+    }
+
+    @Nullable
+    private synchronized Entry read(String key) {
+        PersistentHashMap<String, Entry> map = getMap();
+        if (map == null) return null;
+        try {
+            return map.get(key);
+        }
+        catch (IOException e) {
+            markBroken(e);
+            return null;
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled.compareAndSet(false, true)) return;
+        AppExecutorUtil.getAppScheduledExecutorService().schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes all pending entries to disk. An entry replaced while it is written stays pending for the next flush.
+     */
+
+    private synchronized void flush() {
+        flushScheduled.set(false);
+        PersistentHashMap<String, Entry> map = getMap();
+        if (map == null) {
+            pending.clear();
+            return;
+        }
+
+        try {
+            for (Map.Entry<String, Entry> entry : pending.entrySet()) {
+                map.put(entry.getKey(), entry.getValue());
+                pending.remove(entry.getKey(), entry.getValue());
+            }
+        }
+        catch (IOException e) {
+            markBroken(e);
+        }
+    }
+
+    /**
+     * Returns the persistent map, opening it on first use. If the map was written with another format or other
+     * side settings, it is deleted and started over.
+     *
+     * @return the map, or null if it can't be used in this session
+     */
+
+    @Nullable
+    private PersistentHashMap<String, Entry> getMap() {
+        if (broken || disposed) return null;
+        int version = FORMAT_VERSION * 31 + SideOnlySettings.getInstance().getState().hashCode();
+        if (map != null && mapVersion == version) return map;
+
+        close();
+        Path directory = PathManager.getSystemDir().resolve("sideonly").resolve(project.getLocationHash());
+        Path versionFile = directory.resolve("version");
+        try {
+            if (!Integer.toString(version).equals(Files.exists(versionFile) ? Files.readString(versionFile) : null)) {
+                FileUtil.delete(directory);
+                Files.createDirectories(directory);
+                Files.writeString(versionFile, Integer.toString(version));
+            }
+            map = new PersistentHashMap<>(directory.resolve("sides"), EnumeratorStringDescriptor.INSTANCE, new EntryExternalizer());
+            mapVersion = version;
+        }
+        catch (IOException e) {
+            FileUtil.delete(directory);
+            markBroken(e);
+        }
+        return map;
+    }
+
+    private void markBroken(IOException e) {
+        LOG.warn("Side cache is disabled for this session", e);
+        broken = true;
+        close();
+    }
+
+    private void close() {
+        if (map == null) return;
+        try {
+            map.close();
+        }
+        catch (IOException e) {
+            LOG.warn(e);
+        }
+        map = null;
+    }
+
+    @Override
+    public synchronized void dispose() {
+        flush();
+        disposed = true;
+        close();
+    }
+
+    /**
+     * A stored side together with the stamp of the configuration it was computed for and the files it was computed
+     * from, the file of the element first, with their stamps.
+     */
+
+    private static final class Entry {
+        private final long mask;
+        private final long configurationStamp;
+        private final String[] urls;
+        private final long[] stamps;
+
+        private Entry(long mask, long configurationStamp, String[] urls, long[] stamps) {
+            this.mask = mask;
+            this.configurationStamp = configurationStamp;
+            this.urls = urls;
+            this.stamps = stamps;
+        }
+
+        private Entry(long mask, long configurationStamp, Map<String, Long> dependencies) {
+            this(mask, configurationStamp, new String[dependencies.size()], new long[dependencies.size()]);
+            int i = 0;
+            for (Map.Entry<String, Long> dependency : dependencies.entrySet()) {
+                urls[i] = dependency.getKey();
+                stamps[i++] = dependency.getValue();
+            }
+        }
+    }
+
+    private static final class EntryExternalizer implements DataExternalizer<Entry> {
+        @Override
+        public void save(@NotNull DataOutput out, Entry entry) throws IOException {
+            out.writeLong(entry.mask);
+            out.writeLong(entry.configurationStamp);
+            DataInputOutputUtil.writeINT(out, entry.urls.length);
+            for (int i = 0; i < entry.urls.length; i++) {
+                IOUtil.writeUTF(out, entry.urls[i]);
+                out.writeLong(entry.stamps[i]);
+            }
+        }
+
+        @Override
+        public Entry read(@NotNull DataInput in) throws IOException {
+            long mask = in.readLong();
+            long configurationStamp = in.readLong();
+            int count = DataInputOutputUtil.readINT(in);
+            String[] urls = new String[count];
+            long[] stamps = new long[count];
+            for (int i = 0; i < count; i++) {
+                urls[i] = IOUtil.readUTF(in);
+                stamps[i] = in.readLong();
+            }
+            return new Entry(mask, configurationStamp, urls, stamps);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Streams the violations found by {@link SideOnlyAnalyzerStarter} as they are found, either as JSON lines, one object
+ * per violation followed by a summary object, or as a SARIF 2.1.0 log, whose results are written one by one and whose
+ * invocation carrying the summary is written when the analysis is finished. Files are given by URIs, relative to the
+ * project directory where possible. All methods are thread-safe, so the workers of the analyzer can report their
+ * violations directly.
+ */
+
+package escaper2.testtask.sideonlyplugin;
+
+import com.google.gson.Gson;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+
+public abstract class SideViolationWriter implements AutoCloseable {
+
+    private static final Gson GSON = new Gson();
+
+    protected final Writer out;
+
+    private SideViolationWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Returns the factory of the writers for the given format, so the format can be checked before the output
+     * is opened.
+     *
+     * @param format the format, "jsonl" or "sarif"
+     * @return the factory creating a violation writer on the output, or null if the format is not known
+     */
+
+    @Nullable
+    public static Function<Writer, SideViolationWriter> getFactory(@NotNull String format) {
+        switch (format) {
+            case "jsonl":
+                return JsonLines::new;
+            case "sarif":
+                return Sarif::new;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Writes the beginning of the report.
+     *
+     * @param baseUri the URI of the project directory, ending with a slash, or null if the project has none
+     * @throws IOException if the report can't be written
+     */
+
+    public synchronized void start(@Nullable URI baseUri) throws IOException {
+    }
+
+    /**
+     * Writes a violation and flushes it, so the consumers of the report see it right away.
+     *
+     * @param uri     the URI of the file, relative to the project directory or absolute
+     * @param line    the line of the violation, starting at 1
+     * @param column  the column of the violation, starting at 1
+     * @param text    the text of the element that is accessed from the wrong side
+     * @param message the problem message
+     * @throws IOException if the violation can't be written
+     */
+
+    public abstract void violation(URI uri, int line, int column, String text, String message) throws IOException;
+
+    /**
+     * Writes the end of the report with the statistics of the analysis.
+     *
+     * @param files       the number of files to analyse
+     * @param failedFiles the number of files that couldn't be analysed
+     * @param violations  the number of violations found
+     * @param wallTimeMs  the time the analysis took, in milliseconds
+     * @throws IOException if the report can't be written
+     */
+
+    public abstract void finish(int files, int failedFiles, int violations, long wallTimeMs) throws IOException;
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    static double getFilesPerSecond(int files, long wallTimeMs) {
+        return wallTimeMs == 0 ? files : files * 1000.0 / wallTimeMs;
+    }
+
+    private static Map<String, Object> getSummary(int files, int failedFiles, int violations, long wallTimeMs) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("files", files);
+        summary.put("failedFiles", failedFiles);
+        summary.put("violations", violations);
+        summary.put("wallTimeMs", wallTimeMs);
+        summary.put("filesPerSecond", getFilesPerSecond(files, wallTimeMs));
+        return summary;
+    }
+
+    /**
+     * Writes one JSON object per line: a "violation" object for every violation and a "summary" object at the end.
+     * The files are given by their paths, relative to the project directory or absolute.
+     */
+
+    private static final class JsonLines extends SideViolationWriter {
+
+        private JsonLines(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public synchronized void violation(URI uri, int line, int column, String text, String message) throws IOException {
+            Map<String, Object> object = new LinkedHashMap<>();
+            object.put("type", "violation");
+            object.put("path", uri.isAbsolute() ? Paths.get(uri).toString() : uri.getPath());
+            object.put("line", line);
+            object.put("column", column);
+            object.put("element", text);
+            object.put("message", message);
+            writeLine(object);
+        }
+
+        @Override
+        public synchronized void finish(int files, int failedFiles, int violations, long wallTimeMs) throws IOException {
+            Map<String, Object> object = new LinkedHashMap<>();
+            object.put("type", "summary");
+            object.putAll(getSummary(files, failedFiles, violations, wallTimeMs));
+            writeLine(object);
+        }
+
+        private void writeLine(Map<String, Object> object) throws IOException {
+            out.write(GSON.toJson(object));
+            out.write('\n');
+            out.flush();
+        }
+    }
+
+    /**
+     * Writes a SARIF log with a single run. The document is opened by {@link #start}, which defines the project
+     * directory as the base %SRCROOT% of the relative URIs, every violation is appended to the results of the run,
+     * and {@link #finish} closes the results and adds the invocation, which is only successful if all files
+     * were analysed.
+     */
+
+    private static final class Sarif extends SideViolationWriter {
+        private static final String RULE_ID = "SideOnly";
+        private static final String SOURCE_ROOT = "%SRCROOT%";
+
+        private boolean firstResult = true;
+
+        private Sarif(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public synchronized void start(@Nullable URI baseUri) throws IOException {
+            Map<String, Object> driver = new LinkedHashMap<>();
+            driver.put("name", "SideOnlyPlugin");
+            driver.put("rules", List.of(Map.of("id", RULE_ID, "shortDescription", Map.of("text", "Side-only element accessed from the wrong side"))));
+
+            out.write("{\"$schema\":\"https://json.schemastore.org/sarif-2.1.0.json\",\"version\":\"2.1.0\",\"runs\":[{\"tool\":");
+            out.write(GSON.toJson(Map.of("driver", driver)));
+            if (baseUri != null) {
+                out.write(",\"originalUriBaseIds\":");
+                out.write(GSON.toJson(Map.of(SOURCE_ROOT, Map.of("uri", baseUri.toString()))));
+            }
+            out.write(",\"results\":[\n");
+            out.flush();
+        }
+
+        @Override
+        public synchronized void violation(URI uri, int line, int column, String text, String message) throws IOException {
+            Map<String, Object> region = new LinkedHashMap<>();
+            region.put("startLine", line);
+            region.put("startColumn", column);
+            region.put("snippet", Map.of("text", text));
+
+            Map<String, Object> physicalLocation = new LinkedHashMap<>();
+            physicalLocation.put("artifactLocation", uri.isAbsolute()
+                    ? Map.of("uri", uri.toString())
+                    : Map.of("uri", uri.toString(), "uriBaseId", SOURCE_ROOT));
+            physicalLocation.put("region", region);
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("ruleId", RULE_ID);
+            result.put("level", "error");
+            result.put("message", Map.of("text", message));
+            result.put("locations", List.of(Map.of("physicalLocation", physicalLocation)));
+
+            if (!firstResult) out.write(",\n");
+            firstResult = false;
+            out.write(GSON.toJson(result));
+            out.flush();
+        }
+
+        @Override
+        public synchronized void finish(int files, int failedFiles, int violations, long wallTimeMs) throws IOException {
+            Map<String, Object> invocation = new LinkedHashMap<>();
+            invocation.put("executionSuccessful", failedFiles == 0);
+            invocation.put("properties", getSummary(files, failedFiles, violations, wallTimeMs));
+
+            out.write("\n],\"invocations\":");
+            out.write(GSON.toJson(List.of(invocation)));
+            out.write("}]}\n");
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Precomputes the sides of the restricted declarations in the background when a project is opened, so the first
+ * files opened don't pay for walking the large hierarchies of the annotated classes.
+ * The activity runs once indexing has finished. It first collects the qualified names of the annotated classes
+ * and of all their nested classes and inheritors from {@link SideOnlyIndex}, and then computes the sides of these
+ * classes and their members in chunks. Every step is a non-blocking read action, which is cancelled by write
+ * actions and restarted afterwards, and dropped when the project is closed. The chunks run on a bounded executor,
+ * so the warm-up never takes more than half of the processors.
+ */
+
+package escaper2.testtask.sideonlyplugin;
+
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.startup.StartupActivity;
+import com.intellij.psi.JavaPsiFacade;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiField;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+
+
+public class SideWarmUpActivity implements StartupActivity {
+
+    private static final int CHUNK_SIZE = 50;
+
+    private static final ExecutorService EXECUTOR = AppExecutorUtil.createBoundedApplicationPoolExecutor(
+            "SideOnly Warm-Up", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+
+    @Override
+    public void runActivity(@NotNull Project project) {
+        ReadAction.nonBlocking(() -> collectRestrictedClasses(project))
+                .inSmartMode(project)
+                .expireWith(project)
+                .submit(EXECUTOR)
+                .onSuccess(classNames -> {
+                    for (int start = 0; start < classNames.size(); start += CHUNK_SIZE) {
+                        List<String> chunk = classNames.subList(start, Math.min(start + CHUNK_SIZE, classNames.size()));
+                        ReadAction.nonBlocking(() -> computeSides(project, chunk))
+                                .inSmartMode(project)
+                                .expireWith(project)
+                                .submit(EXECUTOR);
+                    }
+                });
+    }
+
+    /**
+     * Collects the qualified names of the annotated classes, the classes declaring annotated members and all
+     * nested classes and inheritors of the annotated classes.
+     *
+     * @param project the project to collect the classes of
+     * @return the qualified names of the classes to compute the sides of
+     */
+
+    private static List<String> collectRestrictedClasses(Project project) {
+        GlobalSearchScope scope = GlobalSearchScope.allScope(project);
+        List<String> keys = SideOnlyIndex.getAllKeys(scope);
+        Set<String> classNames = new LinkedHashSet<>();
+
+        for (String key : keys) {
+            int memberStart = key.indexOf('#');
+            if (memberStart >= 0) classNames.add(key.substring(0, memberStart));
+        }
+        for (PsiClass psiClass : SideOnlyIndex.collectRestrictedClasses(project, scope, keys)) {
+            ContainerUtil.addIfNotNull(classNames, psiClass.getQualifiedName());
+        }
+        return new ArrayList<>(classNames);
+    }
+
+    /**
+     * Computes the sides of the given classes and of their methods and fields.
+     *
+     * @param project    the project the classes belong to
+     * @param classNames the qualified names of the classes
+     */
+
+    private static void computeSides(Project project, List<String> classNames) {
+        GlobalSearchScope scope = GlobalSearchScope.allScope(project);
+        JavaPsiFacade facade = JavaPsiFacade.getInstance(project);
+        SideOnlyEngine engine = SideOnlyEngine.getInstance(project);
+
+        for (String className : classNames) {
+            for (PsiClass psiClass : facade.findClasses(className, scope)) {
+                ProgressManager.checkCanceled();
+                engine.getSide(psiClass);
+                for (PsiMethod method : psiClass.getMethods()) engine.getSide(method);
+                for (PsiField field : psiClass.getFields()) engine.getSide(field);
+            }
+        }
+    }
+}